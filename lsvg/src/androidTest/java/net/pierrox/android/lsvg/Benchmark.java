@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.util.Log;
+
+/**
+ * Minimal timing helper for the benchmarks, which log their results with the LSVG tag.
+ */
+final class Benchmark {
+    private static final String TAG = "LSVG";
+
+    interface Body {
+        void run() throws Exception;
+    }
+
+    private Benchmark() {
+    }
+
+    /**
+     * Run the body a number of times to warm up, then measure it.
+     * @return the mean duration of a run in nanoseconds
+     */
+    static long measure(String name, int warmup, int iterations, Body body) throws Exception {
+        for(int i = 0; i < warmup; i++) {
+            body.run();
+        }
+        long start = System.nanoTime();
+        for(int i = 0; i < iterations; i++) {
+            body.run();
+        }
+        long mean = (System.nanoTime() - start) / iterations;
+        log(name + ": " + (mean / 1000) + " us");
+        return mean;
+    }
+
+    static void log(String message) {
+        Log.i(TAG, message);
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Parse the corpus on several threads at once and check that every tree is identical to the one
+ * parsed on a single thread. This exercises the per-thread pull parser, the per-document style
+ * and transform caches, the process-wide style cache and the compiled format loader.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ConcurrentParseTest {
+    private static final int THREAD_COUNT = 8;
+    private static final int ITERATIONS = 25;
+
+    @After
+    public void tearDown() {
+        SvgSvg.setProcessWideStyleCacheEnabled(false);
+    }
+
+    @Test
+    public void concurrentParsesMatchSequentialParses() throws Exception {
+        runStressTest();
+    }
+
+    @Test
+    public void concurrentParsesMatchSequentialParsesWithProcessWideStyleCache() throws Exception {
+        SvgSvg.setProcessWideStyleCacheEnabled(true);
+        runStressTest();
+    }
+
+    private void runStressTest() throws Exception {
+        final List<byte[]> sources = TestCorpus.readAll();
+        sources.add(TestCorpus.generateGrid(30, 30));
+        assertTrue("empty corpus", sources.size() > 1);
+
+        // reference trees, parsed and compiled on this thread only
+        final List<byte[]> expected = new ArrayList<>();
+        for(byte[] source : sources) {
+            expected.add(TestCorpus.compile(TestCorpus.parse(source)));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREAD_COUNT);
+        final CountDownLatch start = new CountDownLatch(1);
+        try {
+            ArrayList<Future<Void>> results = new ArrayList<>();
+            for(int t = 0; t < THREAD_COUNT; t++) {
+                final int offset = t;
+                results.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        start.await();
+                        int n = sources.size();
+                        for(int i = 0; i < ITERATIONS * n; i++) {
+                            // threads go through the corpus in different orders
+                            int index = (i + offset) % n;
+                            SvgSvg root = TestCorpus.parse(sources.get(index));
+                            assertArrayEquals("source " + index, expected.get(index), TestCorpus.compile(root));
+
+                            // and through the compiled loader
+                            SvgSvg loaded = SvgDrawable.parse(ByteBuffer.wrap(expected.get(index)));
+                            assertArrayEquals("compiled " + index, expected.get(index), TestCorpus.compile(loaded));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+            for(Future<Void> result : results) {
+                // rethrows assertion failures of the worker threads
+                result.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Check that drawing the corpus again and again allocates no object, whatever the rendering
+ * options. Caches are disabled so that every draw renders the tree.
+ */
+@RunWith(AndroidJUnit4.class)
+public class DrawAllocationTest {
+    private static final int SIZE = 256;
+    // the first draws build the display list and the resolved paints
+    private static final int WARMUP = 5;
+    private static final int DRAWS = 50;
+
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private List<String> mNames;
+    private List<SvgDrawable> mDrawables;
+
+    @Before
+    public void setUp() throws Exception {
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        mNames = new ArrayList<>();
+        mDrawables = new ArrayList<>();
+        for(String name : TestCorpus.names()) {
+            add(name, TestCorpus.read(name));
+        }
+        add("grid", TestCorpus.generateGrid(20, 20));
+    }
+
+    private void add(String name, byte[] source) {
+        SvgDrawable drawable = new SvgDrawable(ByteBuffer.wrap(source));
+        drawable.setBounds(0, 0, SIZE, SIZE);
+        mNames.add(name);
+        mDrawables.add(drawable);
+    }
+
+    @After
+    public void tearDown() {
+        Debug.stopAllocCounting();
+        mCanvas.setBitmap(null);
+        mBitmap.recycle();
+    }
+
+    @Test
+    public void plain() {
+        assertDrawsWithoutAllocation();
+    }
+
+    @Test
+    public void overrideColor() {
+        for(SvgDrawable drawable : mDrawables) {
+            drawable.setOverrideColor(Color.RED);
+        }
+        assertDrawsWithoutAllocation();
+    }
+
+    @Test
+    public void dashed() {
+        for(SvgDrawable drawable : mDrawables) {
+            drawable.setDashedStroke(true);
+        }
+        assertDrawsWithoutAllocation();
+    }
+
+    @Test
+    public void emboss() {
+        for(SvgDrawable drawable : mDrawables) {
+            drawable.setEmboss(true);
+        }
+        assertDrawsWithoutAllocation();
+    }
+
+    @Test
+    public void alpha() {
+        for(SvgDrawable drawable : mDrawables) {
+            drawable.setAlpha(128);
+        }
+        assertDrawsWithoutAllocation();
+    }
+
+    @Test
+    public void colorFilter() {
+        for(SvgDrawable drawable : mDrawables) {
+            drawable.setColorFilter(new PorterDuffColorFilter(Color.BLUE, PorterDuff.Mode.SRC_ATOP));
+        }
+        assertDrawsWithoutAllocation();
+    }
+
+    @Test
+    public void alphaAndColorFilterWithEmboss() {
+        for(SvgDrawable drawable : mDrawables) {
+            drawable.setEmboss(true);
+            drawable.setAlpha(128);
+            drawable.setColorFilter(new PorterDuffColorFilter(Color.BLUE, PorterDuff.Mode.SRC_ATOP));
+        }
+        assertDrawsWithoutAllocation();
+    }
+
+    private void assertDrawsWithoutAllocation() {
+        for(int d = 0; d < mDrawables.size(); d++) {
+            SvgDrawable drawable = mDrawables.get(d);
+            for(int i = 0; i < WARMUP; i++) {
+                drawable.draw(mCanvas);
+            }
+
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            for(int i = 0; i < DRAWS; i++) {
+                drawable.draw(mCanvas);
+            }
+            Debug.stopAllocCounting();
+            int count = Debug.getThreadAllocCount();
+
+            assertEquals(mNames.get(d) + ": objects allocated by " + DRAWS + " draws", 0, count);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.graphics.RectF;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Check which modifications rebuild the display list: transform changes do, paint changes do not.
+ * Also check that transforms parsed from the same specification are copied on write.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ElementInvalidationTest {
+    private static final String DOCUMENT = "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"100\" height=\"100\">"
+            + "<defs><linearGradient id=\"g\" gradientTransform=\"translate(10,10)\">"
+            + "<stop offset=\"0\" stop-color=\"red\"/><stop offset=\"1\" stop-color=\"blue\"/></linearGradient></defs>"
+            + "<path id=\"p\" transform=\"translate(10,10)\" d=\"M0,0 h10 v10 h-10 z\"/>"
+            + "<path id=\"q\" transform=\"translate(10,10)\" d=\"M0,0 h10 v10 h-10 z\"/>"
+            + "</svg>";
+
+    private SvgSvg mRoot;
+    private SvgPath mP;
+    private SvgPath mQ;
+    private final RectF mBounds = new RectF();
+
+    @Before
+    public void setUp() {
+        mRoot = TestCorpus.parse(DOCUMENT.getBytes());
+        mP = (SvgPath) mRoot.getElementById("p");
+        mQ = (SvgPath) mRoot.getElementById("q");
+        mRoot.updateBounds();
+    }
+
+    @Test
+    public void paintChangeKeepsStructure() {
+        int version = mRoot.getStructureVersion();
+        mP.getFillPaint().setColor(0xff00ff00);
+        mP.invalidate();
+        assertEquals(version, mRoot.getStructureVersion());
+    }
+
+    @Test
+    public void transformModifiedThroughGetTransform() {
+        int version = mRoot.getStructureVersion();
+        mP.getTransform().postTranslate(5, 0);
+        mP.invalidate();
+        assertNotEquals(version, mRoot.getStructureVersion());
+
+        mP.getBounds(mBounds);
+        assertEquals(15, mBounds.left, 0);
+        // the matrix parsed from the same specification is not shared anymore
+        mQ.getBounds(mBounds);
+        assertEquals(10, mBounds.left, 0);
+
+        // later paint changes keep the structure
+        version = mRoot.getStructureVersion();
+        mP.invalidate();
+        assertEquals(version, mRoot.getStructureVersion());
+    }
+
+    @Test
+    public void gradientTransformIsCopiedOnWrite() {
+        SvgGradient gradient = (SvgGradient) mRoot.getElementById("g");
+        gradient.getTransform().postTranslate(5, 0);
+
+        mRoot.updateBounds();
+        mQ.getBounds(mBounds);
+        assertEquals(10, mBounds.left, 0);
+    }
+
+    @Test
+    public void transformModifiedWithInvalidateTransform() {
+        int version = mRoot.getStructureVersion();
+        mP.getTransform().postTranslate(0, 5);
+        mP.invalidateTransform();
+        assertNotEquals(version, mRoot.getStructureVersion());
+
+        version = mRoot.getStructureVersion();
+        mP.invalidate();
+        assertEquals(version, mRoot.getStructureVersion());
+    }
+}
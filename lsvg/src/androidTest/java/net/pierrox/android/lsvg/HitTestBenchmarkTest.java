@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.Region;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compare hit testing with winding numbers to the former approach, which rasterized the native
+ * path in a Region for each test.
+ */
+@RunWith(AndroidJUnit4.class)
+public class HitTestBenchmarkTest {
+    private static final float TOLERANCE = 0.1f;
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 20;
+
+    @Test
+    public void fillRuleIsReadFromTheStyle() throws Exception {
+        SvgPath frame = (SvgPath) TestCorpus.parse(TestCorpus.read("shapes.svg")).getElementById("frame");
+        assertEquals(Path.FillType.EVEN_ODD, frame.getFillType());
+        assertTrue(frame.contains(155, 65, TOLERANCE));
+        // inside the hole
+        assertFalse(frame.contains(170, 80, TOLERANCE));
+
+        frame.setFillType(Path.FillType.WINDING);
+        assertTrue(frame.contains(170, 80, TOLERANCE));
+    }
+
+    @Test
+    public void windingNumberVersusRegion() throws Exception {
+        SvgSvg root = TestCorpus.parse(TestCorpus.generateGrid(50, 50));
+        final ArrayList<SvgPath> paths = new ArrayList<>();
+        collectPaths(root, paths);
+        // the center of each path, in its own coordinates
+        final float[] points = new float[paths.size() * 2];
+        RectF bounds = new RectF();
+        for(int i = 0; i < paths.size(); i++) {
+            paths.get(i).getPathData().computeBounds(bounds);
+            points[i * 2] = bounds.centerX();
+            points[i * 2 + 1] = bounds.centerY();
+        }
+
+        long winding = Benchmark.measure("hit test " + paths.size() + " paths, winding number", WARMUP, ITERATIONS, new Benchmark.Body() {
+            @Override
+            public void run() {
+                for(int i = 0; i < paths.size(); i++) {
+                    paths.get(i).contains(points[i * 2], points[i * 2 + 1], TOLERANCE);
+                }
+            }
+        });
+
+        final Region region = new Region();
+        final Region clip = new Region();
+        final RectF pathBounds = new RectF();
+        final Rect clipBounds = new Rect();
+        long rasterized = Benchmark.measure("hit test " + paths.size() + " paths, region", WARMUP, ITERATIONS, new Benchmark.Body() {
+            @Override
+            public void run() {
+                for(int i = 0; i < paths.size(); i++) {
+                    Path path = paths.get(i).getPath();
+                    path.computeBounds(pathBounds, true);
+                    pathBounds.roundOut(clipBounds);
+                    clip.set(clipBounds);
+                    region.setPath(path, clip);
+                    region.contains((int) points[i * 2], (int) points[i * 2 + 1]);
+                }
+            }
+        });
+
+        Benchmark.log("hit test speedup: " + ((float) rasterized / winding));
+    }
+
+    private static void collectPaths(SvgGroup group, ArrayList<SvgPath> out) {
+        for(SvgElement e : group.getChildren()) {
+            if(e instanceof SvgPath) {
+                out.add((SvgPath) e);
+            } else if(e instanceof SvgGroup) {
+                collectPaths((SvgGroup) e, out);
+            }
+        }
+    }
+}
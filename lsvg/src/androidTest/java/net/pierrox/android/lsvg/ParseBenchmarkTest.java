@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Time the parsing of the corpus, from the XML source and from the compiled format.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ParseBenchmarkTest {
+    private static final int WARMUP = 10;
+    private static final int ITERATIONS = 50;
+
+    @Test
+    public void parseCorpus() throws Exception {
+        for(String name : TestCorpus.names()) {
+            run(name, TestCorpus.read(name));
+        }
+    }
+
+    @Test
+    public void parseGeneratedGrid() throws Exception {
+        run("grid 50x50", TestCorpus.generateGrid(50, 50));
+    }
+
+    private static void run(String name, final byte[] source) throws Exception {
+        assertNotNull(name, TestCorpus.parse(source));
+        final byte[] compiled = TestCorpus.compile(TestCorpus.parse(source));
+
+        Benchmark.measure("parse " + name, WARMUP, ITERATIONS, new Benchmark.Body() {
+            @Override
+            public void run() {
+                TestCorpus.parse(source);
+            }
+        });
+        Benchmark.measure("load compiled " + name, WARMUP, ITERATIONS, new Benchmark.Body() {
+            @Override
+            public void run() {
+                SvgDrawable.parse(ByteBuffer.wrap(compiled));
+            }
+        });
+    }
+}
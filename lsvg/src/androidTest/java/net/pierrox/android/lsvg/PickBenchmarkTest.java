@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Time picking paths in a drawing of 5,000 paths, with the index already built: a pick is
+ * expected to take well under a millisecond.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PickBenchmarkTest {
+    private static final int COLUMNS = 100;
+    private static final int ROWS = 50;
+    private static final int PICKS = 2000;
+    private static final long MAX_PICK_NANOS = 1000000;
+
+    @Test
+    public void pickInLargeDrawing() throws Exception {
+        final SvgDrawable drawable = new SvgDrawable(ByteBuffer.wrap(TestCorpus.generateGrid(COLUMNS, ROWS)));
+        // each shape of the grid covers the center of its 10 x 10 cell
+        assertNotNull(drawable.pickPathAt(5, 5));
+
+        Random random = new Random(0);
+        final float[] points = new float[PICKS * 2];
+        for(int i = 0; i < PICKS; i++) {
+            points[i * 2] = random.nextFloat() * COLUMNS * 10;
+            points[i * 2 + 1] = random.nextFloat() * ROWS * 10;
+        }
+
+        long nanos = Benchmark.measure("pick in " + (COLUMNS * ROWS) + " paths, " + PICKS + " picks", 1, 10, new Benchmark.Body() {
+            @Override
+            public void run() {
+                for(int i = 0; i < PICKS; i++) {
+                    drawable.pickPathAt(points[i * 2], points[i * 2 + 1]);
+                }
+            }
+        });
+        long perPick = nanos / PICKS;
+        Benchmark.log("pick: " + perPick + " ns per pick");
+        assertTrue("pick took " + perPick + " ns", perPick < MAX_PICK_NANOS);
+    }
+}
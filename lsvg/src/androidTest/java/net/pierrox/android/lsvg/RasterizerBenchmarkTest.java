@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Measure the throughput of SvgRasterizer, in icons per second, with one thread and with one
+ * thread per core.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RasterizerBenchmarkTest {
+    // copies of the corpus, each one being a distinct source
+    private static final int COPIES = 20;
+    private static final int[] SIZES = { 48, 96, 192 };
+
+    private Context mContext;
+    private File mDirectory;
+    private List<File> mSources;
+
+    @Before
+    public void setUp() throws Exception {
+        // sources are files since the rasterizer resolves assets with the application context
+        mContext = InstrumentationRegistry.getTargetContext();
+        mDirectory = new File(mContext.getCacheDir(), "lsvg-benchmark");
+        mDirectory.mkdirs();
+        mSources = new ArrayList<>();
+        List<String> names = TestCorpus.names();
+        for(int i = 0; i < COPIES; i++) {
+            for(String name : names) {
+                File file = new File(mDirectory, i + "-" + name);
+                FileOutputStream out = new FileOutputStream(file);
+                try {
+                    out.write(TestCorpus.read(name));
+                } finally {
+                    out.close();
+                }
+                mSources.add(file);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        for(File file : mSources) {
+            file.delete();
+        }
+        mDirectory.delete();
+    }
+
+    @Test
+    public void singleThread() throws Exception {
+        run(1);
+    }
+
+    @Test
+    public void threadPerCore() throws Exception {
+        run(Runtime.getRuntime().availableProcessors());
+    }
+
+    private void run(int threadCount) throws Exception {
+        // warm up the code paths and the thread pool, results are discarded
+        rasterizeAll(threadCount);
+
+        long start = System.nanoTime();
+        int count = rasterizeAll(threadCount);
+        long duration = System.nanoTime() - start;
+
+        Benchmark.log("rasterizer, " + threadCount + " thread(s): " + count + " sources at " + SIZES.length
+                + " sizes in " + (duration / 1000000) + " ms, " + (count * 1000000000L / duration) + " sources/s");
+    }
+
+    private int rasterizeAll(int threadCount) throws Exception {
+        SvgRasterizer rasterizer = new SvgRasterizer(mContext, threadCount);
+        try {
+            List<Future<Bitmap[]>> futures = rasterizer.rasterize(mSources, SIZES, null);
+            for(Future<Bitmap[]> future : futures) {
+                Bitmap[] bitmaps = future.get();
+                assertNotNull(bitmaps);
+                assertEquals(SIZES.length, bitmaps.length);
+                for(Bitmap bitmap : bitmaps) {
+                    bitmap.recycle();
+                }
+            }
+            return futures.size();
+        } finally {
+            rasterizer.shutdown();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Load drawings from raw resources of the test package. Svg files are compressed by aapt, so
+ * they cannot be opened as file descriptors and must be streamed.
+ */
+@RunWith(AndroidJUnit4.class)
+public class RawResourceLoadTest {
+    private Context mContext;
+    private int mResourceId;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getContext();
+        mResourceId = mContext.getResources().getIdentifier("compressed_shapes", "raw", mContext.getPackageName());
+        assertTrue("missing raw resource", mResourceId != 0);
+    }
+
+    @Test
+    public void parseCompressedRawResource() throws Exception {
+        SvgSvg root = SvgDrawable.parse(mContext, mResourceId, 0);
+        assertNotNull(root);
+        byte[] expected = TestCorpus.compile(TestCorpus.parse(TestCorpus.read("shapes.svg")));
+        assertArrayEquals(expected, TestCorpus.compile(root));
+    }
+
+    @Test
+    public void drawableFromCompressedRawResource() {
+        SvgDrawable drawable = new SvgDrawable(mContext, mResourceId);
+        assertTrue(drawable.isLoaded());
+
+        drawable = new SvgDrawable(mContext, (Object) mResourceId, 0.5f);
+        assertTrue(drawable.isLoaded());
+    }
+}
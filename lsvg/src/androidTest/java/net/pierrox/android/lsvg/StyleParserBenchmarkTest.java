@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Measure the allocations and the time needed to decode the style of an element, for styles
+ * already seen in the document, which is the common case. Gradient references are excluded since
+ * their id lookup allocates.
+ */
+@RunWith(AndroidJUnit4.class)
+public class StyleParserBenchmarkTest {
+    private static final int WARMUP = 100;
+    private static final int ELEMENTS = 10000;
+
+    private static final String[] STYLES = {
+            "fill:#ffcc00;stroke:#202020;stroke-width:2",
+            "fill:none;stroke:navy;stroke-width:3;stroke-opacity:0.8;stroke-linecap:round",
+            "fill:rgb(192,48,48);stroke:white;stroke-miterlimit:2;stroke-linejoin:bevel",
+            "fill:green;fill-opacity:0.5;stroke:black;stroke-dasharray:4,2;stroke-dashoffset:1",
+            "fill:#c0c;fill-rule:evenodd;display:inline",
+    };
+
+    @After
+    public void tearDown() {
+        Debug.stopAllocCounting();
+    }
+
+    @Test
+    public void styleDeclarations() throws Exception {
+        final SvgSvg root = new SvgSvg();
+        run("style declarations", new Benchmark.Body() {
+            int mIndex;
+
+            @Override
+            public void run() {
+                root.parseStyle(STYLES[mIndex++ % STYLES.length]);
+            }
+        });
+    }
+
+    @Test
+    public void presentationAttributes() throws Exception {
+        final SvgSvg root = new SvgSvg();
+        final SvgStyleParser sp = new SvgStyleParser(root);
+        run("presentation attributes", new Benchmark.Body() {
+            @Override
+            public void run() {
+                sp.begin();
+                sp.parseAttribute(SvgStyleParser.PROPERTY_FILL, "#3070c0");
+                sp.parseAttribute(SvgStyleParser.PROPERTY_STROKE, "navy");
+                sp.parseAttribute(SvgStyleParser.PROPERTY_STROKE_WIDTH, "1.5");
+                sp.parseAttribute(SvgStyleParser.PROPERTY_STROKE_DASHARRAY, "4 2 1 2");
+                root.internStyle(sp.getStyle());
+            }
+        });
+    }
+
+    @Test
+    public void gradientStops() throws Exception {
+        final SvgSvg root = new SvgSvg();
+        final SvgStyleParser sp = new SvgStyleParser(root);
+        run("gradient stops", new Benchmark.Body() {
+            @Override
+            public void run() {
+                sp.begin();
+                sp.parseAttribute(SvgStyleParser.PROPERTY_STOP_COLOR, "#a0d0ff");
+                sp.parseDeclarations("stop-color:#3070c0;stop-opacity:0.5");
+            }
+        });
+    }
+
+    private static void run(String name, final Benchmark.Body element) throws Exception {
+        for(int i = 0; i < WARMUP; i++) {
+            element.run();
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        for(int i = 0; i < ELEMENTS; i++) {
+            element.run();
+        }
+        Debug.stopAllocCounting();
+        int count = Debug.getThreadAllocCount();
+        Benchmark.log(name + ": " + ((float) count / ELEMENTS) + " allocations per element");
+        assertEquals(name + ": objects allocated for " + ELEMENTS + " elements", 0, count);
+
+        long nanos = Benchmark.measure(name, 0, 1, new Benchmark.Body() {
+            @Override
+            public void run() throws Exception {
+                for(int i = 0; i < ELEMENTS; i++) {
+                    element.run();
+                }
+            }
+        });
+        Benchmark.log(name + ": " + (nanos / ELEMENTS) + " ns per element");
+    }
+}
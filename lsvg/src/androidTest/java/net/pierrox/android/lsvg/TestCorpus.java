@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.content.Context;
+import android.support.test.InstrumentationRegistry;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Drawings used by the tests, from the assets of the test package.
+ */
+final class TestCorpus {
+    private static final String DIRECTORY = "corpus";
+
+    private TestCorpus() {
+    }
+
+    static List<String> names() throws IOException {
+        ArrayList<String> names = new ArrayList<>();
+        for(String name : context().getAssets().list(DIRECTORY)) {
+            if(name.endsWith(".svg")) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    static byte[] read(String name) throws IOException {
+        InputStream is = context().getAssets().open(DIRECTORY + "/" + name);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while((n = is.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            is.close();
+        }
+    }
+
+    static List<byte[]> readAll() throws IOException {
+        ArrayList<byte[]> sources = new ArrayList<>();
+        for(String name : names()) {
+            sources.add(read(name));
+        }
+        return sources;
+    }
+
+    static SvgSvg parse(byte[] source) {
+        return SvgDrawable.parse(ByteBuffer.wrap(source));
+    }
+
+    /**
+     * Return the compiled form of a tree, which captures its elements, paths, styles and
+     * transforms: two trees with the same compiled form are identical.
+     */
+    static byte[] compile(SvgSvg root) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SvgCompiledFormat.write(root, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Return a generated drawing made of a grid of columns x rows shapes, mixing curves and lines.
+     */
+    static byte[] generateGrid(int columns, int rows) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(columns * 10)
+                .append("\" height=\"").append(rows * 10).append("\">");
+        for(int y = 0; y < rows; y++) {
+            sb.append("<g transform=\"translate(0,").append(y * 10).append(")\">");
+            for(int x = 0; x < columns; x++) {
+                int left = x * 10;
+                sb.append("<path fill=\"#").append(Integer.toHexString(0x100000 + (x * 7919 + y * 104729) % 0xefffff))
+                        .append("\" d=\"M").append(left + 1).append(",1 C").append(left + 4).append(",-1 ")
+                        .append(left + 8).append(",3 ").append(left + 9).append(",5 L").append(left + 5)
+                        .append(",9 Q").append(left + 2).append(",8 ").append(left + 1).append(",5 z\"/>");
+            }
+            sb.append("</g>");
+        }
+        sb.append("</svg>");
+        return sb.toString().getBytes();
+    }
+
+    private static Context context() {
+        return InstrumentationRegistry.getContext();
+    }
+}
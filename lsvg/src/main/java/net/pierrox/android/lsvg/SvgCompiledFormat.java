@@ -0,0 +1,420 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Shader;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * Compact binary representation of a parsed SVG tree.
+ * A compiled document is loaded without any XML, path or style parsing: path verbs and
+ * coordinates, paint specifications, gradients, transforms and ids are stored as is.
+ * SvgDrawable detects compiled documents automatically, whatever their source.
+ */
+public final class SvgCompiledFormat {
+    private static final byte[] MAGIC = { 'L', 'S', 'V', 'G' };
+    private static final byte VERSION = 3;
+
+    private static final byte ELEMENT_GROUP = 0;
+    private static final byte ELEMENT_PATH = 1;
+
+    private static final byte FLAG_VISIBLE = 1;
+    private static final byte FLAG_EVEN_ODD = 2;
+
+    private static final byte PAINT_NONE = 0;
+    private static final byte PAINT_COLOR = 1;
+    private static final byte PAINT_GRADIENT = 2;
+
+    private static final byte GRADIENT_LINEAR = 0;
+    private static final byte GRADIENT_RADIAL = 1;
+
+    private static final Paint.Cap[] CAPS = Paint.Cap.values();
+    private static final Paint.Join[] JOINS = Paint.Join.values();
+    private static final Shader.TileMode[] TILE_MODES = Shader.TileMode.values();
+
+    private SvgCompiledFormat() {
+    }
+
+    /**
+     * Serialize a parsed tree. Paints set through {@link SvgPath#setFillPaint(Paint)} or
+     * {@link SvgPath#setStrokePaint(Paint)} are saved using their color and stroke attributes only.
+     */
+    public static void write(SvgSvg svg, OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+
+        ArrayList<SvgGradient> gradients = new ArrayList<>();
+        for(SvgElement e : svg.getElementsById().values()) {
+            if(e instanceof SvgGradient && ((SvgGradient)e).getPaint() != null) {
+                gradients.add((SvgGradient) e);
+            }
+        }
+
+        out.write(MAGIC);
+        out.writeByte(VERSION);
+        out.writeFloat(svg.width);
+        out.writeFloat(svg.height);
+
+        out.writeInt(gradients.size());
+        for(SvgGradient g : gradients) {
+            writeGradient(out, g);
+        }
+
+        writeElement(out, svg, gradients);
+
+        out.flush();
+    }
+
+    public static boolean isCompiled(ByteBuffer buffer) {
+        int pos = buffer.position();
+        if(buffer.limit() - pos < MAGIC.length) {
+            return false;
+        }
+        for(int i = 0; i < MAGIC.length; i++) {
+            if(buffer.get(pos + i) != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Check the header of a stream, which must support mark and reset.
+     */
+    static boolean isCompiled(InputStream is) throws IOException {
+        is.mark(MAGIC.length);
+        try {
+            for(byte b : MAGIC) {
+                if(is.read() != b) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            is.reset();
+        }
+    }
+
+    /*package*/ static void read(SvgSvg root, ByteBuffer buffer) throws IOException {
+        ByteBuffer b = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        // the same lock as the document parsing methods
+        synchronized (root) {
+            try {
+                b.position(MAGIC.length);
+                byte version = b.get();
+                if(version != VERSION) {
+                    throw new IOException("unsupported compiled svg version " + version);
+                }
+                root.width = b.getFloat();
+                root.height = b.getFloat();
+
+                SvgGradient[] gradients = new SvgGradient[b.getInt()];
+                for(int i = 0; i < gradients.length; i++) {
+                    gradients[i] = readGradient(b, root);
+                }
+
+                readElement(b, root, root, root, gradients, new SvgStyle());
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                throw new IOException("truncated or corrupted compiled svg");
+            }
+        }
+    }
+
+    private static void writeGradient(DataOutputStream out, SvgGradient g) throws IOException {
+        if(g instanceof SvgLinearGradient) {
+            SvgLinearGradient lg = (SvgLinearGradient) g;
+            out.writeByte(GRADIENT_LINEAR);
+            out.writeFloat(lg.x1);
+            out.writeFloat(lg.y1);
+            out.writeFloat(lg.x2);
+            out.writeFloat(lg.y2);
+        } else {
+            SvgRadialGradient rg = (SvgRadialGradient) g;
+            out.writeByte(GRADIENT_RADIAL);
+            out.writeFloat(rg.cx);
+            out.writeFloat(rg.cy);
+            out.writeFloat(rg.r);
+        }
+        writeString(out, g.getId());
+        out.writeByte(g.getTileMode().ordinal());
+        writeTransform(out, g.mTransform);
+
+        // stops are written resolved, there is no need for href
+        float[] offsets = g.getStopOffsets();
+        int[] colors = g.getStopColors();
+        out.writeInt(offsets.length);
+        for(int i = 0; i < offsets.length; i++) {
+            out.writeFloat(offsets[i]);
+            out.writeInt(colors[i]);
+        }
+    }
+
+    private static SvgGradient readGradient(ByteBuffer b, SvgSvg root) throws IOException {
+        SvgGradient g;
+        if(b.get() == GRADIENT_LINEAR) {
+            SvgLinearGradient lg = new SvgLinearGradient(root, root);
+            lg.x1 = b.getFloat();
+            lg.y1 = b.getFloat();
+            lg.x2 = b.getFloat();
+            lg.y2 = b.getFloat();
+            g = lg;
+        } else {
+            SvgRadialGradient rg = new SvgRadialGradient(root, root);
+            rg.cx = b.getFloat();
+            rg.cy = b.getFloat();
+            rg.r = b.getFloat();
+            g = rg;
+        }
+        setId(root, g, readString(b));
+        g.setTileMode(TILE_MODES[b.get()]);
+        g.mTransform = readTransform(b);
+
+        int count = b.getInt();
+        for(int i = 0; i < count; i++) {
+            g.addStopOffset(b.getFloat());
+            g.addStopColors(b.getInt());
+        }
+        g.updatePaint();
+
+        return g;
+    }
+
+    private static void writeElement(DataOutputStream out, SvgElement e, ArrayList<SvgGradient> gradients) throws IOException {
+        out.writeByte(e instanceof SvgGroup ? ELEMENT_GROUP : ELEMENT_PATH);
+        int flags = e.isVisible() ? FLAG_VISIBLE : 0;
+        if(e instanceof SvgPath && ((SvgPath) e).getFillType() == Path.FillType.EVEN_ODD) {
+            flags |= FLAG_EVEN_ODD;
+        }
+        out.writeByte(flags);
+        writeString(out, e.getId());
+        writeTransform(out, e.mTransform);
+
+        if(e instanceof SvgGroup) {
+            ArrayList<SvgElement> children = ((SvgGroup) e).getChildren();
+            int count = 0;
+            for(SvgElement c : children) {
+                if(c instanceof SvgGroup || c instanceof SvgPath) count++;
+            }
+            out.writeInt(count);
+            for(SvgElement c : children) {
+                if(c instanceof SvgGroup || c instanceof SvgPath) {
+                    writeElement(out, c, gradients);
+                }
+            }
+        } else {
+            SvgPath path = (SvgPath) e;
+            SvgPathData data = path.getPathData();
+            out.writeInt(data.verbCount);
+            out.write(data.verbs, 0, data.verbCount);
+            out.writeInt(data.coordCount);
+            for(int i = 0; i < data.coordCount; i++) {
+                out.writeFloat(data.coords[i]);
+            }
+
+            SvgStyle style = path.style;
+            writePaint(out, path.fillPaint, style.fillGradient, gradients);
+            writePaint(out, path.strokePaint, style.strokeGradient, gradients);
+            if(path.strokePaint != null) {
+                Paint sp = path.strokePaint;
+                out.writeFloat(sp.getStrokeWidth());
+                out.writeByte(sp.getStrokeCap().ordinal());
+                out.writeByte(sp.getStrokeJoin().ordinal());
+                out.writeFloat(sp.getStrokeMiter());
+                float[] dashes = sp.getPathEffect() == null ? null : style.strokeDashArray;
+                if(dashes == null) {
+                    out.writeInt(0);
+                } else {
+                    out.writeInt(dashes.length);
+                    for(float d : dashes) {
+                        out.writeFloat(d);
+                    }
+                    out.writeFloat(style.strokeDashOffset);
+                }
+            }
+        }
+    }
+
+    private static void readElement(ByteBuffer b, SvgSvg root, SvgGroup parent, SvgGroup target, SvgGradient[] gradients, SvgStyle scratch) throws IOException {
+        byte kind = b.get();
+        byte flags = b.get();
+        String id = readString(b);
+        Matrix transform = readTransform(b);
+        boolean isVisible = (flags & FLAG_VISIBLE) != 0;
+
+        SvgElement e;
+        if(kind == ELEMENT_GROUP) {
+            SvgGroup group;
+            if(target != null) {
+                // the root element has already been created
+                group = target;
+                group.mTransform = transform;
+                if(!isVisible) group.setVisible(false);
+            } else {
+                group = new SvgGroup(root, parent, isVisible, transform);
+            }
+            int count = b.getInt();
+            ArrayList<SvgElement> children = group.getChildren();
+            children.ensureCapacity(count);
+            for(int i = 0; i < count; i++) {
+                readElement(b, root, group, null, gradients, scratch);
+            }
+            e = group;
+        } else {
+            byte[] verbs = new byte[b.getInt()];
+            b.get(verbs);
+            float[] coords = new float[b.getInt()];
+            b.asFloatBuffer().get(coords);
+            b.position(b.position() + coords.length * 4);
+
+            SvgStyle style = scratch;
+            style.reset();
+            style.isVisible = isVisible;
+            style.fillEvenOdd = (flags & FLAG_EVEN_ODD) != 0;
+            readPaint(b, style, false, gradients);
+            readPaint(b, style, true, gradients);
+            if(style.hasStroke) {
+                style.strokeWidth = b.getFloat();
+                style.strokeCap = CAPS[b.get()];
+                style.strokeJoin = JOINS[b.get()];
+                style.strokeMiter = b.getFloat();
+                int count = b.getInt();
+                if(count > 0) {
+                    if(style.strokeDashArray == null || style.strokeDashArray.length < count) {
+                        style.strokeDashArray = new float[count];
+                    }
+                    b.asFloatBuffer().get(style.strokeDashArray, 0, count);
+                    b.position(b.position() + count * 4);
+                    style.strokeDashCount = count;
+                    style.strokeDashOffset = b.getFloat();
+                }
+            }
+
+            e = new SvgPath(root, parent, transform, new SvgPathData(verbs, coords), root.internStyle(style));
+        }
+
+        if(e != root) {
+            parent.getChildren().add(e);
+        }
+        setId(root, e, id);
+    }
+
+    private static void writePaint(DataOutputStream out, Paint paint, SvgGradient gradient, ArrayList<SvgGradient> gradients) throws IOException {
+        if(paint == null) {
+            out.writeByte(PAINT_NONE);
+            return;
+        }
+        int index = paint.getShader() == null ? -1 : gradients.indexOf(gradient);
+        out.writeByte(index == -1 ? PAINT_COLOR : PAINT_GRADIENT);
+        // the color is also needed for gradients, it holds the opacity
+        out.writeInt(paint.getColor());
+        if(index != -1) {
+            out.writeInt(index);
+        }
+    }
+
+    private static void readPaint(ByteBuffer b, SvgStyle style, boolean stroke, SvgGradient[] gradients) {
+        byte kind = b.get();
+        if(kind == PAINT_NONE) {
+            if(stroke) {
+                style.hasStroke = false;
+            } else {
+                style.hasFill = false;
+            }
+            return;
+        }
+
+        int color = b.getInt();
+        SvgGradient g = kind == PAINT_GRADIENT ? gradients[b.getInt()] : null;
+        if(stroke) {
+            style.hasStroke = true;
+            style.strokeColor = color;
+            style.strokeAlpha = color >>> 24;
+            style.strokeGradient = g;
+        } else {
+            style.hasFill = true;
+            style.fillColor = color;
+            style.fillAlpha = color >>> 24;
+            style.fillGradient = g;
+        }
+    }
+
+    private static void writeTransform(DataOutputStream out, Matrix m) throws IOException {
+        if(m == null) {
+            out.writeBoolean(false);
+            return;
+        }
+        out.writeBoolean(true);
+        float[] v = new float[9];
+        m.getValues(v);
+        out.writeFloat(v[Matrix.MSCALE_X]);
+        out.writeFloat(v[Matrix.MSKEW_X]);
+        out.writeFloat(v[Matrix.MTRANS_X]);
+        out.writeFloat(v[Matrix.MSKEW_Y]);
+        out.writeFloat(v[Matrix.MSCALE_Y]);
+        out.writeFloat(v[Matrix.MTRANS_Y]);
+    }
+
+    private static Matrix readTransform(ByteBuffer b) {
+        if(b.get() == 0) {
+            return null;
+        }
+        Matrix m = new Matrix();
+        m.setValues(new float[] {
+                b.getFloat(), b.getFloat(), b.getFloat(),
+                b.getFloat(), b.getFloat(), b.getFloat(),
+                0, 0, 1
+        });
+        return m;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if(s == null) {
+            out.writeShort(-1);
+        } else {
+            byte[] bytes = s.getBytes("UTF-8");
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer b) throws IOException {
+        short length = b.getShort();
+        if(length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        b.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    private static void setId(SvgSvg root, SvgElement e, String id) {
+        if(id != null) {
+            e.setId(id);
+            root.getElementsById().put(id, e);
+        }
+    }
+}
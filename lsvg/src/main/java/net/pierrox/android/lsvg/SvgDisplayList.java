@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.graphics.Matrix;
+
+/**
+ * Flat list of the visible elements of a tree in drawing order, each with the matrix from its
+ * coordinates to the document coordinates. Groups are kept in the list, followed by their
+ * subtree, so that a whole subtree outside of the clip can be skipped. The list is rebuilt when
+ * the visibility or the transforms of the tree change, see SvgSvg.getStructureVersion(). Paints
+ * are read from the paths when drawing, since they can change without affecting the list.
+ */
+final class SvgDisplayList {
+    int count;
+    SvgElement[] elements = new SvgElement[16];
+    // the path of each entry, null for groups
+    SvgPath[] paths = new SvgPath[16];
+    // index of the entry following the subtree of each entry
+    int[] next = new int[16];
+    // document matrix of each entry, null for identity
+    Matrix[] matrices = new Matrix[16];
+    // document matrices pre-multiplied by the base matrix, ready for Canvas.setMatrix()
+    Matrix[] deviceMatrices = new Matrix[16];
+
+    private SvgSvg mRoot;
+    private int mStructureVersion;
+    private boolean mBuilt;
+    private final Matrix mBaseMatrix = new Matrix();
+    private boolean mDeviceMatricesValid;
+
+    /**
+     * Build the list again if the tree or its structure changed since the last call.
+     */
+    void update(SvgSvg root) {
+        int version = root.getStructureVersion();
+        if(mBuilt && root == mRoot && version == mStructureVersion) {
+            return;
+        }
+        for(int i = 0; i < count; i++) {
+            elements[i] = null;
+            paths[i] = null;
+        }
+        count = 0;
+        if(root.isVisible()) {
+            add(root, root.mTransform);
+        }
+        mRoot = root;
+        mStructureVersion = version;
+        mBuilt = true;
+        mDeviceMatricesValid = false;
+    }
+
+    /**
+     * Compute the device matrices for this base matrix, unless it did not change.
+     */
+    void setBaseMatrix(Matrix base) {
+        if(mDeviceMatricesValid && mBaseMatrix.equals(base)) {
+            return;
+        }
+        mBaseMatrix.set(base);
+        for(int i = 0; i < count; i++) {
+            Matrix m = deviceMatrices[i];
+            if(m == null) {
+                m = new Matrix();
+                deviceMatrices[i] = m;
+            }
+            m.set(base);
+            if(matrices[i] != null) {
+                m.preConcat(matrices[i]);
+            }
+        }
+        mDeviceMatricesValid = true;
+    }
+
+    private void add(SvgGroup group, Matrix matrix) {
+        for(SvgElement e : group.getChildren()) {
+            if(!e.isVisible()) {
+                continue;
+            }
+            Matrix m = matrix;
+            if(e.mTransform != null) {
+                m = new Matrix(e.mTransform);
+                if(matrix != null) {
+                    m.postConcat(matrix);
+                }
+            }
+            if(e instanceof SvgGroup) {
+                int index = append(e, null, m);
+                add((SvgGroup) e, m);
+                next[index] = count;
+            } else if(e instanceof SvgPath) {
+                int index = append(e, (SvgPath) e, m);
+                next[index] = count;
+            }
+        }
+    }
+
+    private int append(SvgElement element, SvgPath path, Matrix matrix) {
+        if(count == paths.length) {
+            int length = count * 2;
+            SvgElement[] e = new SvgElement[length];
+            System.arraycopy(elements, 0, e, 0, count);
+            elements = e;
+            SvgPath[] p = new SvgPath[length];
+            System.arraycopy(paths, 0, p, 0, count);
+            paths = p;
+            int[] n = new int[length];
+            System.arraycopy(next, 0, n, 0, count);
+            next = n;
+            Matrix[] m = new Matrix[length];
+            System.arraycopy(matrices, 0, m, 0, count);
+            matrices = m;
+            Matrix[] d = new Matrix[length];
+            System.arraycopy(deviceMatrices, 0, d, 0, count);
+            deviceMatrices = d;
+        }
+        elements[count] = element;
+        paths[count] = path;
+        matrices[count] = matrix;
+        return count++;
+    }
+}
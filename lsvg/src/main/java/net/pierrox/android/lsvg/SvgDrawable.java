@@ -16,6 +16,8 @@
 package net.pierrox.android.lsvg;
 
 import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.Resources;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
@@ -23,16 +25,27 @@ import android.graphics.ColorFilter;
 import android.graphics.DashPathEffect;
 import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Picture;
 import android.graphics.PixelFormat;
+import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.graphics.RectF;
-import android.graphics.Region;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 
 public class SvgDrawable extends Drawable {
     public static final int SET_COLOR_NOTHING = 0;
@@ -40,12 +53,82 @@ public class SvgDrawable extends Drawable {
     public static final int SET_COLOR_DONE = 2;
 
     private Matrix mMatrix = new Matrix();
+    private SvgDisplayList mDisplayList = new SvgDisplayList();
+    private Matrix mTmpBaseMatrix = new Matrix();
+    private RectF mTmpSrcRect = new RectF();
+    private RectF mTmpDstRect = new RectF();
+    private DrawStats mDrawStats = new DrawStats();
+    // sorted by increasing maximum size
+    private ArrayList<DetailLevel> mDetailLevels;
+    // the levels of detail as a flat array, part of the identity of shared renderings
+    private float[] mDetailLevelsKey;
     private SvgSvg mSvgRoot;
     private Paint mOverrideFillPaint;
+    // reused by setOverrideColor
+    private Paint mOverrideColorPaint;
     private Paint mOverrideStrokePaint;
-    private Integer mOverrideStrokeColor;
+    private boolean mHasOverrideStrokeColor;
+    private int mOverrideStrokeColor;
+    // paints of the tree resolved against the override options, alpha and color filter
+    private ResolvedPaints mFillPaints = new ResolvedPaints();
+    private ResolvedPaints mStrokePaints = new ResolvedPaints();
+    private ResolvedPaints mEmbossStrokePaints;
+    private int mOverrideVersion;
+    // see setAlpha() and setColorFilter()
+    private int mAlpha = 255;
+    private ColorFilter mColorFilter;
+    // alpha and color filter applied to the paints of the tree by the rendering in progress
+    private int mPaintAlpha = 255;
+    private ColorFilter mPaintColorFilter;
+    private RectF mTmpLayerRect = new RectF();
+    // whether shapes overlap, in which case alpha is applied through a layer
+    private boolean mOverlapping;
+    private boolean mOverlappingValid;
+    private int mOverlappingModificationCount;
+    private long[] mTmpOverlapKeys = new long[16];
+
+    // spatial index of the paths, built on the first pick
+    private SvgPathIndex mPathIndex;
+    // paths share their paints, never modify them while drawing
     private boolean mEmboss;
     private int mEmbossColor;
+    // coverage of the tree at the bounds size, drawn with the tints below
+    private Bitmap mEmbossMask;
+    private Canvas mEmbossMaskCanvas;
+    private boolean mEmbossMaskValid;
+    private int mEmbossMaskModificationCount;
+    private Paint mEmbossMaskPaint;
+    private Paint mEmbossShadowPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private Paint mEmbossLightPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private Paint mEmbossPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private boolean mEmbossPaintsValid;
+    private float[] mTmpHsv = new float[3];
+
+    // optional rendering of the whole drawable at its bounds size, reused until the tree changes
+    private boolean mRenderCacheEnabled;
+    private Bitmap mCachedBitmap;
+    private Canvas mCacheCanvas;
+    private boolean mCacheValid;
+    private int mCachedModificationCount;
+    private Paint mCachePaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private RectF mTmpDirtyRectF = new RectF();
+
+    // optional recording of the whole drawable, replayed until the tree changes
+    private boolean mPictureRecordingEnabled;
+    private Picture mPicture;
+    private boolean mPictureValid;
+    private int mPictureModificationCount;
+    private Rect mTmpDirtyRect = new Rect();
+
+    // tiled rendering
+    private SvgTileRenderer mTileRenderer;
+
+    // optional renderings shared with other drawables of the same source, see SvgRasterCache
+    private SvgRasterCache mRasterCache;
+    private String mSourceKey;
+    private int mLoadedModificationCount;
+    private boolean mCustomOverrideFillPaint;
+    private SvgRasterCache.Key mRasterKey = new SvgRasterCache.Key();
 
     public static boolean isSvgObject(Context context, Object assetOrResourceId) {
         if(assetOrResourceId instanceof String) {
@@ -68,20 +151,88 @@ public class SvgDrawable extends Drawable {
     }
 
 	public SvgDrawable(File file) {
-        parse(file);
-        updateMatrix();
+        setSvgRoot(parse(file, 0), getSourceKey(file, 0));
 	}
 
 	public SvgDrawable(Context context, String assetName) {
-        parse(context, assetName);
-        updateMatrix();
+        setSvgRoot(parse(context, assetName, 0), getSourceKey(assetName, 0));
 	}
 
 	public SvgDrawable(Context context, int rawResourceId) {
-        parse(context, rawResourceId);
-        updateMatrix();
+        setSvgRoot(parse(context, rawResourceId, 0), getSourceKey(rawResourceId, 0));
 	}
 
+    /**
+     * Load a drawing and simplify its paths within a distance in document units: short segments
+     * are dropped, flat curves become lines and runs of lines are reduced. Compiled drawings are
+     * loaded as they are.
+     * @param source a File, an asset name or a raw resource id
+     * @param pathSimplificationTolerance 0 to keep paths as they are
+     */
+    public SvgDrawable(Context context, Object source, float pathSimplificationTolerance) {
+        setSvgRoot(parse(context, source, pathSimplificationTolerance), getSourceKey(source, pathSimplificationTolerance));
+    }
+
+    /**
+     * Load a drawing, compiled or not, from the remaining bytes of a buffer. The bytes are read in
+     * place: use a direct or mapped buffer to avoid any heap copy.
+     */
+    public SvgDrawable(ByteBuffer buffer) {
+        setSvgRoot(parse(buffer, 0), null);
+    }
+
+    /**
+     * Load a drawing from a region of a file channel, which is memory mapped.
+     */
+    public SvgDrawable(FileChannel channel, long position, long size) {
+        setSvgRoot(parse(channel, position, size, 0), null);
+    }
+
+    /**
+     * Empty drawable, drawing nothing until its tree is set, see SvgLoader.
+     */
+    /*package*/ SvgDrawable() {
+    }
+
+    /**
+     * @param sourceKey identity of the source of the tree, or null if it cannot be identified
+     */
+    /*package*/ void setSvgRoot(SvgSvg root, String sourceKey) {
+        if(root != null) {
+            root.setHolderDrawable(this);
+            mLoadedModificationCount = root.getModificationCount();
+        }
+        mSvgRoot = root;
+        mSourceKey = sourceKey;
+        mOverlappingValid = false;
+        updateMatrix();
+        invalidateSelf();
+    }
+
+    /**
+     * @param pathSimplificationTolerance part of the identity since it changes the parsed tree
+     */
+    /*package*/ static String getSourceKey(Object source, float pathSimplificationTolerance) {
+        String key;
+        if(source instanceof File) {
+            File file = (File) source;
+            key = "file:" + file.getAbsolutePath() + ":" + file.lastModified();
+        } else if(source instanceof String) {
+            key = "asset:" + source;
+        } else {
+            key = "res:" + source;
+        }
+        return pathSimplificationTolerance > 0 ? key + "?simplify=" + pathSimplificationTolerance : key;
+    }
+
+    /**
+     * Return true when the tree is available, false while it is being loaded asynchronously or
+     * if it could not be loaded.
+     */
+    public boolean isLoaded() {
+        return mSvgRoot != null;
+    }
+
 	@Override
 	public int getIntrinsicHeight() {
 		return mSvgRoot==null ? 0 : (int) mSvgRoot.height;
@@ -107,152 +258,784 @@ public class SvgDrawable extends Drawable {
     }
 
 
-    private Bitmap mCachedBitmap;
-
     private void updateMatrix() {
         if(mSvgRoot == null) return;
         mMatrix.reset();
         Rect bounds = getBounds();
-        RectF src = new RectF(0, 0, mSvgRoot.width, mSvgRoot.height);
-        RectF dst = new RectF(bounds);
-        mMatrix.setRectToRect(src, dst, Matrix.ScaleToFit.FILL);
-//        int width = bounds.width();
-//        int height = bounds.height();
-//        if(width > 0 && height > 0) {
-//            mCachedBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-//            Canvas canvas = new Canvas(mCachedBitmap);
-//            canvas.concat(mMatrix);
-//            drawSvgElement(canvas, mSvgRoot);
-//        }
+        mTmpSrcRect.set(0, 0, mSvgRoot.width, mSvgRoot.height);
+        mTmpDstRect.set(bounds);
+        mMatrix.setRectToRect(mTmpSrcRect, mTmpDstRect, Matrix.ScaleToFit.FILL);
+        invalidateRenderings();
+        mEmbossMaskValid = false;
+    }
+
+    /**
+     * Render the drawing once in a bitmap of the size of the bounds, and draw this bitmap until
+     * the tree, the bounds or the rendering options change. This trades memory for speed, and is
+     * best suited to static drawings drawn many times, such as icons in a scrolling list.
+     */
+    public void setRenderCacheEnabled(boolean enabled) {
+        mRenderCacheEnabled = enabled;
+        if(!enabled) {
+            mCachedBitmap = null;
+            mCacheCanvas = null;
+        }
+        mCacheValid = false;
+        invalidateSelf();
+    }
+
+    public boolean isRenderCacheEnabled() {
+        return mRenderCacheEnabled;
+    }
+
+    /**
+     * Record the drawing in a Picture and replay it until the tree, the bounds or the rendering
+     * options change. Unlike the render cache, this keeps the drawing vectorial and can be replayed
+     * on hardware accelerated canvases starting with Android 6.0: SvgDrawableView then keeps
+     * hardware acceleration, provided this is enabled before the drawable is set on the view.
+     */
+    public void setPictureRecordingEnabled(boolean enabled) {
+        mPictureRecordingEnabled = enabled;
+        if(!enabled) {
+            mPicture = null;
+        }
+        mPictureValid = false;
+        invalidateSelf();
+    }
+
+    public boolean isPictureRecordingEnabled() {
+        return mPictureRecordingEnabled;
+    }
+
+    /**
+     * Return true if this drawable renders correctly on a hardware accelerated canvas.
+     */
+    public boolean supportsHardwareAcceleration() {
+        return mPictureRecordingEnabled && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+    }
+
+    /**
+     * Render the drawing as tiles of tileSize pixels, cached per zoom level, and draw only the
+     * tiles covering the clip. This is meant for large drawings such as maps and floor plans
+     * displayed zoomed in, for instance through the image matrix of SvgDrawableView: tiles are
+     * rendered progressively over several frames, coarser tiles being shown in the meantime.
+     * Drawings rotated or skewed by the canvas matrix, and embossed drawings, are drawn directly.
+     * @param maxCacheBytes maximum size of the cached tiles in bytes
+     */
+    public void enableTiledRendering(int tileSize, int maxCacheBytes) {
+        mTileRenderer = new SvgTileRenderer(this, tileSize, maxCacheBytes);
+        invalidateSelf();
+    }
+
+    public void disableTiledRendering() {
+        mTileRenderer = null;
+        invalidateSelf();
+    }
+
+    public boolean isTiledRenderingEnabled() {
+        return mTileRenderer != null;
+    }
+
+    private void invalidateRenderings() {
+        mCacheValid = false;
+        mPictureValid = false;
+        if(mTileRenderer != null) {
+            mTileRenderer.clear();
+        }
+    }
+
+    /**
+     * Share renderings with other drawables of the same source through this cache, or stop
+     * sharing if null. Sharing stops as well once the tree of this drawable is modified.
+     */
+    public void setRasterCache(SvgRasterCache cache) {
+        mRasterCache = cache;
+        invalidateSelf();
     }
 
     private static final float EMBOSS_SHADOW_RATIO = 300f;
     private static final float EMBOSS_VALUE_SCALE = 0.4f;
+    private static final double LOG_2 = Math.log(2);
+    // maximum distance between curves and the segments approximating them when picking paths
+    private static final float HIT_TEST_TOLERANCE = 0.1f;
 
     @Override
 	public void draw(Canvas canvas) {
         if(mSvgRoot == null) return;
 
-//        if(mCachedBitmap != null) {
-//            canvas.drawBitmap(mCachedBitmap, 0, 0, null);
-//        }
-        canvas.save();
+        if(mRasterCache != null) {
+            Rect bounds = getBounds();
+            Bitmap shared = getSharedRendering(bounds.width(), bounds.height());
+            if(shared != null) {
+                canvas.drawBitmap(shared, bounds.left, bounds.top, mCachePaint);
+                return;
+            }
+        }
 
-        if(mEmboss) {
-            float[] hsv = new float[3];
-            Color.colorToHSV(mEmbossColor, hsv);
+        if(mRenderCacheEnabled) {
+            Rect bounds = getBounds();
+            if(updateCachedBitmap(bounds.width(), bounds.height())) {
+                canvas.drawBitmap(mCachedBitmap, bounds.left, bounds.top, mCachePaint);
+                return;
+            }
+        }
+
+        if(mTileRenderer != null && !mEmboss) {
+            Matrix base = mTmpBaseMatrix;
+            canvas.getMatrix(base);
+            base.preConcat(mMatrix);
+            if(mTileRenderer.draw(canvas, mSvgRoot, base, mCachePaint)) {
+                return;
+            }
+        }
+
+        if(mPictureRecordingEnabled) {
+            Rect bounds = getBounds();
+            if(updatePicture(bounds.width(), bounds.height())) {
+                // the picture is recorded opaque and unfiltered, so that fading it does not record it again
+                int saveCount;
+                if(mAlpha != 255 || mColorFilter != null) {
+                    saveCount = canvas.saveLayer(getLayerRect(), mCachePaint, Canvas.ALL_SAVE_FLAG);
+                } else {
+                    saveCount = canvas.save();
+                }
+                canvas.translate(bounds.left, bounds.top);
+                canvas.drawPicture(mPicture);
+                canvas.restoreToCount(saveCount);
+                return;
+            }
+        }
+
+        drawTreeWithAlpha(canvas);
+	}
 
-            float v = hsv[2];
+    /**
+     * Draw the tree with the alpha and color filter of the drawable. The alpha is applied to each
+     * paint, unless shapes overlap: shapes below would then show through, so the tree is drawn
+     * opaque in a layer instead.
+     */
+    private void drawTreeWithAlpha(Canvas canvas) {
+        int saveCount = -1;
+        if(mAlpha != 255 && (mEmboss || isOverlapping())) {
+            saveCount = canvas.saveLayerAlpha(getLayerRect(), mAlpha, Canvas.ALL_SAVE_FLAG);
+        } else {
+            mPaintAlpha = mAlpha;
+        }
+        mPaintColorFilter = mColorFilter;
+
+        drawTree(canvas);
+
+        mPaintAlpha = 255;
+        mPaintColorFilter = null;
+        if(saveCount != -1) {
+            canvas.restoreToCount(saveCount);
+        }
+    }
 
+    /**
+     * Return the area covered by the drawing, including the emboss shadow.
+     */
+    private RectF getLayerRect() {
+        RectF layer = mTmpLayerRect;
+        layer.set(getBounds());
+        if(mEmboss) {
             float dx = getIntrinsicWidth() / EMBOSS_SHADOW_RATIO;
-//            canvas.drawARGB(255, 154, 154, 154);
-
-            canvas.save();
-            canvas.translate(-dx, -dx);
-            canvas.concat(mMatrix);
-            hsv[2] = v * EMBOSS_VALUE_SCALE;
-            setOverrideColor(Color.HSVToColor(hsv));
-            drawSvgElement(canvas, mSvgRoot);
-            canvas.restore();
-
-            canvas.save();
-            canvas.translate(dx,  dx);
-            canvas.concat(mMatrix);
-            hsv[2] = v / EMBOSS_VALUE_SCALE;
-            setOverrideColor(Color.HSVToColor(hsv));
-            drawSvgElement(canvas, mSvgRoot);
-            canvas.restore();
-
-            canvas.concat(mMatrix);
-            setOverrideColor(mEmbossColor);
-            drawSvgElement(canvas, mSvgRoot);
+            layer.inset(-dx, -dx);
+        }
+        return layer;
+    }
+
+    /**
+     * Return true if a visible path overlaps another one, or its own fill with its stroke.
+     */
+    private boolean isOverlapping() {
+        int modificationCount = mSvgRoot.getModificationCount();
+        if(mOverlappingValid && modificationCount == mOverlappingModificationCount) {
+            return mOverlapping;
+        }
+
+        SvgDisplayList list = getDisplayList();
+        if(!mSvgRoot.mBoundsValid) {
+            mSvgRoot.updateBounds();
+        }
+        if(mTmpOverlapKeys.length < list.count) {
+            mTmpOverlapKeys = new long[list.count];
+        }
+        // sort and sweep: paths sorted by their left bound, each one is compared with the
+        // following ones until their left bound is past its right bound
+        long[] keys = mTmpOverlapKeys;
+        int n = 0;
+        boolean overlapping = false;
+        for(int i = 0; i < list.count; i++) {
+            SvgPath path = list.paths[i];
+            if(path == null || path.mBounds.isEmpty()) {
+                continue;
+            }
+            if(path.fillPaint != null && path.strokePaint != null) {
+                overlapping = true;
+                break;
+            }
+            keys[n++] = SvgSortKeys.make(path.mBounds.left, i);
+        }
+        if(!overlapping) {
+            Arrays.sort(keys, 0, n);
+            SvgElement[] elements = list.elements;
+            for(int a = 0; a < n && !overlapping; a++) {
+                RectF b = elements[SvgSortKeys.getIndex(keys[a])].mBounds;
+                for(int c = a + 1; c < n; c++) {
+                    RectF o = elements[SvgSortKeys.getIndex(keys[c])].mBounds;
+                    if(o.left >= b.right) {
+                        break;
+                    }
+                    if(o.top < b.bottom && b.top < o.bottom) {
+                        overlapping = true;
+                        break;
+                    }
+                }
+            }
+        }
+
+        mOverlapping = overlapping;
+        mOverlappingValid = true;
+        mOverlappingModificationCount = modificationCount;
+        return overlapping;
+    }
+
+    /**
+     * Render the tree in the cached bitmap if it is missing or stale.
+     * Return false if there is nothing to draw.
+     */
+    private boolean updateCachedBitmap(int width, int height) {
+        if(width <= 0 || height <= 0) {
+            return false;
+        }
+
+        int modificationCount = mSvgRoot.getModificationCount();
+        if(mCachedBitmap == null || mCachedBitmap.getWidth() != width || mCachedBitmap.getHeight() != height) {
+            mCachedBitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            mCacheCanvas = new Canvas(mCachedBitmap);
+            mCacheValid = false;
+        } else if(mCacheValid && modificationCount == mCachedModificationCount) {
+            return true;
+        } else if(mCacheValid && mSvgRoot.consumeDirtyRect(mTmpDirtyRectF)) {
+            // only some elements have been modified: render again the area they cover
+            redrawCachedArea(mTmpDirtyRectF, width, height);
+            mCachedModificationCount = modificationCount;
+            return true;
         } else {
-            canvas.concat(mMatrix);
-            drawSvgElement(canvas, mSvgRoot);
+            mCachedBitmap.eraseColor(Color.TRANSPARENT);
         }
 
+        Rect bounds = getBounds();
+        Canvas canvas = mCacheCanvas;
+        canvas.save();
+        canvas.translate(-bounds.left, -bounds.top);
+        drawTree(canvas);
         canvas.restore();
-	}
+        // start tracking modifications from this rendering
+        mSvgRoot.consumeDirtyRect(mTmpDirtyRectF);
+        mSvgRoot.updateBounds();
+        mCacheValid = true;
+        mCachedModificationCount = modificationCount;
+        return true;
+    }
 
-    private void drawSvgElement(Canvas canvas, SvgElement e) {
-        if(!e.isVisible()) {
+    /**
+     * Return the rendering from the shared cache, rendering it if needed, or null if this
+     * drawable cannot share its rendering.
+     */
+    private Bitmap getSharedRendering(int width, int height) {
+        if(mSourceKey == null || width <= 0 || height <= 0
+                || mSvgRoot.getModificationCount() != mLoadedModificationCount
+                || mOverrideStrokePaint != null || mCustomOverrideFillPaint) {
+            return null;
+        }
+
+        SvgRasterCache.Key key = mRasterKey;
+        key.source = mSourceKey;
+        key.width = width;
+        key.height = height;
+        key.hasOverrideColor = mHasOverrideStrokeColor;
+        key.overrideColor = mHasOverrideStrokeColor ? mOverrideStrokeColor : 0;
+        key.emboss = mEmboss;
+        key.embossColor = mEmboss ? mEmbossColor : 0;
+        key.detailLevels = mDetailLevelsKey;
+        Bitmap bitmap = mRasterCache.get(key);
+        if(bitmap == null) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(bitmap);
+            Rect bounds = getBounds();
+            canvas.translate(-bounds.left, -bounds.top);
+            drawTree(canvas);
+            mRasterCache.put(key.copy(), bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Record the tree in the picture if it is missing or stale.
+     * Return false if there is nothing to draw.
+     */
+    private boolean updatePicture(int width, int height) {
+        if(width <= 0 || height <= 0) {
+            return false;
+        }
+
+        int modificationCount = mSvgRoot.getModificationCount();
+        if(mPicture != null && mPictureValid && modificationCount == mPictureModificationCount
+                && mPicture.getWidth() == width && mPicture.getHeight() == height) {
+            return true;
+        }
+
+        if(mPicture == null) {
+            mPicture = new Picture();
+        }
+        Rect bounds = getBounds();
+        Canvas canvas = mPicture.beginRecording(width, height);
+        canvas.translate(-bounds.left, -bounds.top);
+        drawTree(canvas);
+        mPicture.endRecording();
+        mPictureValid = true;
+        mPictureModificationCount = modificationCount;
+        return true;
+    }
+
+    /**
+     * Render again the given area of the cached bitmap, in document coordinates.
+     */
+    private void redrawCachedArea(RectF dirty, int width, int height) {
+        if(dirty.isEmpty()) {
             return;
         }
-        if(e instanceof SvgGroup) {
-            drawSvgGroup(canvas, (SvgGroup)e);
-        } else if(e instanceof SvgPath) {
-            drawSvgPath(canvas, (SvgPath)e);
+
+        Rect bounds = getBounds();
+        mMatrix.mapRect(dirty);
+        dirty.offset(-bounds.left, -bounds.top);
+        Rect area = mTmpDirtyRect;
+        dirty.roundOut(area);
+        // antialiasing, and the emboss shadow and light offsets
+        int margin = 1;
+        if(mEmboss) {
+            margin += (int) Math.ceil(getIntrinsicWidth() / EMBOSS_SHADOW_RATIO);
         }
+        area.inset(-margin, -margin);
+        if(!area.intersect(0, 0, width, height)) {
+            return;
+        }
+
+        Canvas canvas = mCacheCanvas;
+        canvas.save();
+        canvas.clipRect(area);
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        canvas.translate(-bounds.left, -bounds.top);
+        drawTree(canvas);
+        canvas.restore();
     }
 
-    private void drawSvgGroup(Canvas canvas, SvgGroup group) {
-        Matrix t = group.getTransform();
-        if(t != null) {
-            canvas.save();
-            canvas.concat(t);
+    private void drawTree(Canvas canvas) {
+        canvas.save();
+
+        if(mEmboss) {
+            // the tree is rendered once in an alpha mask, then the mask is drawn with three tints
+            Rect bounds = getBounds();
+            Bitmap mask = updateEmbossMask(bounds.width(), bounds.height());
+            if(mask != null) {
+                updateEmbossPaints();
+                mEmbossShadowPaint.setColorFilter(mPaintColorFilter);
+                mEmbossLightPaint.setColorFilter(mPaintColorFilter);
+                mEmbossPaint.setColorFilter(mPaintColorFilter);
+                float dx = getIntrinsicWidth() / EMBOSS_SHADOW_RATIO;
+                canvas.drawBitmap(mask, bounds.left - dx, bounds.top - dx, mEmbossShadowPaint);
+                canvas.drawBitmap(mask, bounds.left + dx, bounds.top + dx, mEmbossLightPaint);
+                canvas.drawBitmap(mask, bounds.left, bounds.top, mEmbossPaint);
+            }
+        } else {
+            drawDisplayList(canvas);
+        }
+
+        canvas.restore();
+    }
+
+    /**
+     * Render the coverage of the tree in the emboss mask if it is missing or stale.
+     * Return null if there is nothing to draw.
+     */
+    private Bitmap updateEmbossMask(int width, int height) {
+        if(width <= 0 || height <= 0) {
+            return null;
         }
-        for(SvgElement e : group.getChildren()) {
-            drawSvgElement(canvas, e);
+
+        int modificationCount = mSvgRoot.getModificationCount();
+        if(mEmbossMask == null || mEmbossMask.getWidth() != width || mEmbossMask.getHeight() != height) {
+            mEmbossMask = Bitmap.createBitmap(width, height, Bitmap.Config.ALPHA_8);
+            mEmbossMaskCanvas = new Canvas(mEmbossMask);
+            mEmbossMaskValid = false;
+        } else if(mEmbossMaskValid && modificationCount == mEmbossMaskModificationCount) {
+            return mEmbossMask;
+        } else {
+            mEmbossMask.eraseColor(Color.TRANSPARENT);
         }
-        if(t != null) {
-            canvas.restore();
+
+        // shapes are drawn opaque whatever their colors, as the override color used to do
+        Paint overrideFillPaint = mOverrideFillPaint;
+        boolean hasOverrideStrokeColor = mHasOverrideStrokeColor;
+        int overrideStrokeColor = mOverrideStrokeColor;
+        ResolvedPaints strokePaints = mStrokePaints;
+        int paintAlpha = mPaintAlpha;
+        ColorFilter paintColorFilter = mPaintColorFilter;
+        if(mEmbossMaskPaint == null) {
+            mEmbossMaskPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            mEmbossStrokePaints = new ResolvedPaints();
         }
+        mOverrideFillPaint = mEmbossMaskPaint;
+        mHasOverrideStrokeColor = true;
+        mOverrideStrokeColor = Color.BLACK;
+        mStrokePaints = mEmbossStrokePaints;
+        mPaintAlpha = 255;
+        mPaintColorFilter = null;
+
+        Rect bounds = getBounds();
+        Canvas canvas = mEmbossMaskCanvas;
+        canvas.save();
+        canvas.translate(-bounds.left, -bounds.top);
+        drawDisplayList(canvas);
+        canvas.restore();
+
+        mOverrideFillPaint = overrideFillPaint;
+        mHasOverrideStrokeColor = hasOverrideStrokeColor;
+        mOverrideStrokeColor = overrideStrokeColor;
+        mStrokePaints = strokePaints;
+        mPaintAlpha = paintAlpha;
+        mPaintColorFilter = paintColorFilter;
+        mEmbossMaskValid = true;
+        mEmbossMaskModificationCount = modificationCount;
+        return mEmbossMask;
     }
 
-    private void drawSvgPath(Canvas canvas, SvgPath path) {
-        Matrix t = path.getTransform();
-        if(t != null) {
-            canvas.save();
-            canvas.concat(t);
+    private void updateEmbossPaints() {
+        if(mEmbossPaintsValid) {
+            return;
         }
-        if(path.fillPaint != null) {
-            canvas.drawPath(path.getPath(), mOverrideFillPaint != null ? mOverrideFillPaint : path.fillPaint);
+        float[] hsv = mTmpHsv;
+        Color.colorToHSV(mEmbossColor, hsv);
+        float v = hsv[2];
+        hsv[2] = v * EMBOSS_VALUE_SCALE;
+        mEmbossShadowPaint.setColor(Color.HSVToColor(hsv));
+        hsv[2] = v / EMBOSS_VALUE_SCALE;
+        mEmbossLightPaint.setColor(Color.HSVToColor(hsv));
+        mEmbossPaint.setColor(mEmbossColor);
+        mEmbossPaintsValid = true;
+    }
+
+    /*package*/ SvgDisplayList getDisplayList() {
+        mDisplayList.update(mSvgRoot);
+        return mDisplayList;
+    }
+
+    /**
+     * Draw the tree with the matrix of the canvas pre-multiplied by the drawable matrix.
+     */
+    private void drawDisplayList(Canvas canvas) {
+        SvgDisplayList list = mDisplayList;
+        list.update(mSvgRoot);
+        Matrix base = mTmpBaseMatrix;
+        canvas.getMatrix(base);
+        base.preConcat(mMatrix);
+        list.setBaseMatrix(base);
+
+        // level of detail
+        float scale = base.mapRadius(1);
+        DetailLevel level = selectDetailLevel(scale);
+        float minElementSize = 0;
+        float tolerance = 0;
+        if(level != null) {
+            minElementSize = level.getMinElementSize(scale);
+            tolerance = level.getCurveTolerance(scale);
+            if(minElementSize > 0 && !mSvgRoot.mBoundsValid) {
+                mSvgRoot.updateBounds();
+            }
         }
-        if(path.strokePaint != null) {
-            int oldColor = 0;
-            Paint strokePaint;
-
-            if(mOverrideStrokePaint == null) {
-                strokePaint = path.strokePaint;
-            } else {
-                strokePaint = mOverrideStrokePaint;
-                strokePaint.setStrokeWidth(path.strokePaint.getStrokeWidth()/2);
-//                strokePaint.setStrokeCap(path.strokePaint.getStrokeCap());
-//                strokePaint.setStrokeJoin(path.strokePaint.getStrokeJoin());
-                strokePaint.setColor(path.strokePaint.getColor());
+
+        int saveCount = canvas.save();
+        SvgElement[] elements = list.elements;
+        SvgPath[] paths = list.paths;
+        int[] next = list.next;
+        Matrix[] matrices = list.deviceMatrices;
+        DrawStats stats = mDrawStats;
+        stats.reset();
+        for(int i = 0, n = list.count; i < n; ) {
+            canvas.setMatrix(matrices[i]);
+            SvgPath path = paths[i];
+            // skip elements, or whole groups, entirely outside of the clip
+            if(canvas.quickReject(elements[i].getLocalBounds(), Canvas.EdgeType.AA)) {
+                if(path == null) {
+                    stats.culledGroups++;
+                    stats.culledPaths += countPaths(paths, i + 1, next[i]);
+                } else {
+                    stats.culledPaths++;
+                }
+                i = next[i];
+                continue;
+            }
+            if(minElementSize > 0) {
+                RectF b = elements[i].mBounds;
+                if(b.width() < minElementSize && b.height() < minElementSize) {
+                    stats.detailSkippedPaths += path == null ? countPaths(paths, i + 1, next[i]) : 1;
+                    i = next[i];
+                    continue;
+                }
+            }
+            if(path != null) {
+                drawSvgPath(canvas, path, tolerance > 0 ? path.getFlattenedPath(tolerance) : path.getPath());
+                stats.drawnPaths++;
             }
+            i++;
+        }
+        canvas.restoreToCount(saveCount);
+    }
 
-            if(mOverrideStrokeColor != null) {
-                oldColor = strokePaint.getColor();
-                strokePaint.setColor(mOverrideStrokeColor);
+    private static int countPaths(SvgPath[] paths, int from, int to) {
+        int count = 0;
+        for(int i = from; i < to; i++) {
+            if(paths[i] != null) {
+                count++;
             }
+        }
+        return count;
+    }
 
-            canvas.drawPath(path.getPath(), strokePaint);
+    /**
+     * Return the statistics of the last rendering of the tree. When renderings are cached, this
+     * is the last time the cache was updated.
+     */
+    public DrawStats getDrawStats() {
+        return mDrawStats;
+    }
+
+    public static class DrawStats {
+        public int drawnPaths;
+        // paths not drawn because outside of the clip, including those of culled groups
+        public int culledPaths;
+        public int culledGroups;
+        // paths not drawn because too small for the current level of detail
+        public int detailSkippedPaths;
+
+        private void reset() {
+            drawnPaths = 0;
+            culledPaths = 0;
+            culledGroups = 0;
+            detailSkippedPaths = 0;
+        }
+    }
+
+    /**
+     * Register a level of detail, used when the drawing is rendered at most maxSize pixels wide
+     * and high. When several levels apply, the one with the smallest maxSize is used.
+     * @param minElementSize elements smaller than this size in pixels are not drawn
+     * @param curveTolerance curves are drawn as line segments deviating at most by this distance
+     *                       in pixels, or exactly if 0
+     */
+    public void addDetailLevel(int maxSize, float minElementSize, float curveTolerance) {
+        if(mDetailLevels == null) {
+            mDetailLevels = new ArrayList<>();
+        }
+        DetailLevel level = new DetailLevel(maxSize, minElementSize, curveTolerance);
+        int i = 0;
+        while(i < mDetailLevels.size() && mDetailLevels.get(i).maxSize < maxSize) {
+            i++;
+        }
+        mDetailLevels.add(i, level);
+        updateDetailLevelsKey();
+        invalidateRenderings();
+        invalidateSelf();
+    }
 
-            if(mOverrideStrokeColor != null) {
-                strokePaint.setColor(oldColor);
+    public void clearDetailLevels() {
+        mDetailLevels = null;
+        mDetailLevelsKey = null;
+        invalidateRenderings();
+        invalidateSelf();
+    }
+
+    private void updateDetailLevelsKey() {
+        int n = mDetailLevels.size();
+        float[] key = new float[n * 3];
+        for(int i = 0; i < n; i++) {
+            DetailLevel level = mDetailLevels.get(i);
+            key[i * 3] = level.maxSize;
+            key[i * 3 + 1] = level.minElementSize;
+            key[i * 3 + 2] = level.curveTolerance;
+        }
+        mDetailLevelsKey = key;
+    }
+
+    /**
+     * Return the level of detail for a rendering of the document at this scale, or null.
+     */
+    /*package*/ DetailLevel selectDetailLevel(float scale) {
+        if(mDetailLevels == null) {
+            return null;
+        }
+        float size = Math.max(mSvgRoot.width, mSvgRoot.height) * scale;
+        for(int i = 0, n = mDetailLevels.size(); i < n; i++) {
+            DetailLevel level = mDetailLevels.get(i);
+            if(size <= level.maxSize) {
+                return level;
             }
         }
-        if(t != null) {
-            canvas.restore();
+        return null;
+    }
+
+    /*package*/ static class DetailLevel {
+        final int maxSize;
+        final float minElementSize;
+        final float curveTolerance;
+
+        DetailLevel(int maxSize, float minElementSize, float curveTolerance) {
+            this.maxSize = maxSize;
+            this.minElementSize = minElementSize;
+            this.curveTolerance = curveTolerance;
+        }
+
+        // thresholds are converted from device pixels to document units
+
+        float getMinElementSize(float scale) {
+            return minElementSize / scale;
+        }
+
+        float getCurveTolerance(float scale) {
+            if(curveTolerance <= 0) {
+                return 0;
+            }
+            // rounded to a power of two so that flattened paths survive small zoom changes
+            return (float) Math.pow(2, Math.floor(Math.log(curveTolerance / scale) / LOG_2));
         }
     }
 
+    /*package*/ void drawSvgPath(Canvas canvas, SvgPath path, Path nativePath) {
+        if(path.fillPaint != null) {
+            canvas.drawPath(nativePath, resolveFillPaint(path.fillPaint));
+        }
+        if(path.strokePaint != null) {
+            canvas.drawPath(nativePath, resolveStrokePaint(path.strokePaint));
+        }
+    }
+
+    private Paint resolveFillPaint(Paint paint) {
+        if(mOverrideFillPaint != null) {
+            paint = mOverrideFillPaint;
+        }
+        if(mPaintAlpha == 255 && mPaintColorFilter == null) {
+            return paint;
+        }
+        return resolvePaint(mFillPaints, paint, false);
+    }
+
+    private Paint resolveStrokePaint(Paint paint) {
+        if(mOverrideStrokePaint == null && !mHasOverrideStrokeColor && mPaintAlpha == 255 && mPaintColorFilter == null) {
+            return paint;
+        }
+        return resolvePaint(mStrokePaints, paint, true);
+    }
+
+    /**
+     * Return the paint to draw with instead of this paint of the tree. Derived paints are created
+     * once per paint of the tree and updated when the options change, so that drawing neither
+     * modifies shared paints nor allocates.
+     */
+    private Paint resolvePaint(ResolvedPaints resolved, Paint paint, boolean stroke) {
+        // paints of the tree can be modified in place
+        int modificationCount = mSvgRoot.getModificationCount();
+        if(modificationCount != resolved.modificationCount) {
+            resolved.paints.clear();
+            resolved.modificationCount = modificationCount;
+        }
+        ResolvedPaint r = resolved.paints.get(paint);
+        if(r == null) {
+            r = new ResolvedPaint();
+            resolved.paints.put(paint, r);
+        } else if(r.overrideVersion == mOverrideVersion && r.alpha == mPaintAlpha && r.colorFilter == mPaintColorFilter) {
+            return r.paint;
+        }
+
+        Paint p = r.paint;
+        if(stroke && mOverrideStrokePaint != null) {
+            p.set(mOverrideStrokePaint);
+            p.setStrokeWidth(paint.getStrokeWidth()/2);
+            p.setColor(paint.getColor());
+        } else {
+            p.set(paint);
+        }
+        if(stroke && mHasOverrideStrokeColor) {
+            p.setColor(mOverrideStrokeColor);
+        }
+        if(mPaintAlpha != 255) {
+            p.setAlpha(p.getAlpha() * mPaintAlpha / 255);
+        }
+        if(mPaintColorFilter != null) {
+            p.setColorFilter(mPaintColorFilter);
+        }
+        r.overrideVersion = mOverrideVersion;
+        r.alpha = mPaintAlpha;
+        r.colorFilter = mPaintColorFilter;
+        return p;
+    }
+
+    private static final class ResolvedPaints {
+        // by paint of the tree, compared by identity
+        final IdentityHashMap<Paint,ResolvedPaint> paints = new IdentityHashMap<>();
+        int modificationCount;
+    }
+
+    private static final class ResolvedPaint {
+        final Paint paint = new Paint();
+        // options the paint has been resolved with
+        int overrideVersion;
+        int alpha;
+        ColorFilter colorFilter;
+    }
+
 	@Override
 	public int getOpacity() {
 		return PixelFormat.TRANSLUCENT;
 	}
 
+    /**
+     * The alpha is applied to the paints of the tree, or to the rendering when it is cached or recorded.
+     */
 	@Override
-	public void setAlpha(int arg0) {
-		// pass
+	public void setAlpha(int alpha) {
+        if(alpha == mAlpha) {
+            return;
+        }
+        mAlpha = alpha;
+        mCachePaint.setAlpha(alpha);
+        invalidateSelf();
 	}
 
+    @Override
+    public int getAlpha() {
+        return mAlpha;
+    }
+
+    /**
+     * The color filter is applied to the paints of the tree, or to the rendering when it is cached or recorded.
+     */
 	@Override
-	public void setColorFilter(ColorFilter arg0) {
-		// pass
+	public void setColorFilter(ColorFilter colorFilter) {
+        if(colorFilter == mColorFilter) {
+            return;
+        }
+        mColorFilter = colorFilter;
+        mCachePaint.setColorFilter(colorFilter);
+        invalidateSelf();
 	}
 
+    @Override
+    public ColorFilter getColorFilter() {
+        return mColorFilter;
+    }
+
     // return one of SET_COLOR_*
     public int setColorAt(float x, float y, int color) {
         SvgPath path = pickPathAt(x, y);
@@ -260,7 +1043,9 @@ public class SvgDrawable extends Drawable {
             Paint fp = path.fillPaint;
             if(fp != null) {
                 if(fp.getColor() != color) {
-                    fp.setColor(color);
+                    // copy on write, the paint may be shared with other paths
+                    path.getFillPaint().setColor(color);
+                    path.invalidate();
                     return SET_COLOR_DONE;
                 } else {
                     return SET_COLOR_SAME;
@@ -280,25 +1065,41 @@ public class SvgDrawable extends Drawable {
         } else {
             mOverrideStrokePaint = null;
         }
+        mOverrideVersion++;
+        invalidateRenderings();
     }
 
     public void setOverrideColor(int color) {
-        mOverrideFillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        mOverrideFillPaint.setColor(color);
+        if(mOverrideColorPaint == null) {
+            mOverrideColorPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        }
+        mOverrideColorPaint.setColor(color);
+        mOverrideFillPaint = mOverrideColorPaint;
+        mHasOverrideStrokeColor = true;
         mOverrideStrokeColor = color;
+        mCustomOverrideFillPaint = false;
+        mOverrideVersion++;
+        invalidateRenderings();
     }
 
+
     public void setOverrideFillPaint(Paint paint) {
         mOverrideFillPaint = paint;
+        mOverrideVersion++;
+        mCustomOverrideFillPaint = paint != null;
+        invalidateRenderings();
     }
 
     public void setEmbossColor(int embossColor) {
         mEmbossColor = embossColor;
+        mEmbossPaintsValid = false;
+        invalidateRenderings();
         invalidateSelf();
     }
 
     public void setEmboss(boolean emboss) {
         mEmboss = emboss;
+        invalidateRenderings();
         invalidateSelf();
     }
 
@@ -306,94 +1107,202 @@ public class SvgDrawable extends Drawable {
         return mSvgRoot;
     }
 
-    private SvgPath pickPathAt(float x, float y) {
-        RectF clip = new RectF(0, 0, (int)mSvgRoot.width, (int)mSvgRoot.height);
-        return pickPathAt(mSvgRoot, x, y, clip);
-    }
-
-    private Rect mTmpRect = new Rect();
-
-    private SvgPath pickPathAt(SvgGroup group, float x, float y, RectF clipRect) {
-        RectF localClipRect = new RectF(clipRect);
-        Region r = new Region();
-        if(group.getTransform() != null) {
-            float[] pts = new float[] { x, y };
-            Matrix inv = new Matrix();
-            group.getTransform().invert(inv);
-            inv.mapRect(localClipRect);
-            inv.mapPoints(pts);
-            x = pts[0];
-            y = pts[1];
-        }
-        localClipRect.roundOut(mTmpRect);
-        Region clip = new Region(mTmpRect);
-
-        int sx = (int) Math.round(x);
-        int sy = (int) Math.round(y);
-        for(int i = group.getChildren().size()-1; i>=0; i--) {
-            SvgElement e = group.getChildren().get(i);
-            if(e instanceof SvgGroup) {
-                SvgPath p = pickPathAt((SvgGroup) e, x, y, localClipRect);
-                if(p != null) {
-                    return p;
-                }
-            } else if(e instanceof SvgPath) {
-                SvgPath p = (SvgPath)e;
-                if(p.fillPaint != null) {
-                    r.setPath(p.getPath(), clip);
-                    if(r.contains(sx, sy)) {
-                        return p;
-                    }
-                }
+    /**
+     * Return the topmost visible filled path containing the point, in document coordinates.
+     */
+    /*package*/ SvgPath pickPathAt(float x, float y) {
+        SvgDisplayList list = getDisplayList();
+        if(!mSvgRoot.mBoundsValid) {
+            mSvgRoot.updateBounds();
+        }
+        if(mPathIndex == null) {
+            mPathIndex = new SvgPathIndex();
+        }
+        mPathIndex.update(mSvgRoot, list);
+
+        // only the paths whose bounds contain the point are tested
+        for(int i = 0, n = mPathIndex.findCandidates(list, x, y); i < n; i++) {
+            int index = mPathIndex.getCandidate(i);
+            SvgPath p = list.paths[index];
+            if(p.fillPaint != null && pathContains(p, list.matrices[index], x, y)) {
+                return p;
             }
         }
 
         return null;
     }
 
+    private float[] mTmpPoint = new float[2];
+    private Matrix mTmpInverse = new Matrix();
 
-    private void parse(File file) {
-        InputStream is = null;
+    private boolean pathContains(SvgPath path, Matrix matrix, float x, float y) {
+        float[] pts = mTmpPoint;
+        pts[0] = x;
+        pts[1] = y;
+        float tolerance = HIT_TEST_TOLERANCE;
+        if(matrix != null) {
+            if(!matrix.invert(mTmpInverse)) {
+                return false;
+            }
+            mTmpInverse.mapPoints(pts);
+            // the tolerance is in document units, converted to the coordinates of the path
+            tolerance /= matrix.mapRadius(1);
+        }
+        return path.contains(pts[0], pts[1], tolerance);
+    }
+
+
+    /**
+     * @param source a File, an asset name or a raw resource id
+     */
+    /*package*/ static SvgSvg parse(Context context, Object source, float tolerance) {
+        if(source instanceof File) {
+            return parse((File) source, tolerance);
+        } else if(source instanceof String) {
+            return parse(context, (String) source, tolerance);
+        } else {
+            return parse(context, ((Integer) source).intValue(), tolerance);
+        }
+    }
+
+    /*package*/ static SvgSvg parse(File file, float tolerance) {
+        FileInputStream is = null;
         try {
             is = new FileInputStream(file);
-            parse(is);
+            FileChannel channel = is.getChannel();
+            return parse(channel, 0, channel.size(), tolerance);
         } catch (IOException e) {
             e.printStackTrace();
+            return null;
         } finally {
             if(is != null) try { is.close(); } catch(IOException e) {}
         }
     }
 
-    private void parse(Context context, int rawResourceId) {
+    /*package*/ static SvgSvg parse(Context context, int rawResourceId, float tolerance) {
+        // uncompressed resources are mapped in place, others are streamed
+        try {
+            return parse(context.getResources().openRawResourceFd(rawResourceId), tolerance);
+        } catch (Resources.NotFoundException e) {
+            // compressed resource
+        }
+
         InputStream is = null;
         try {
             is = context.getResources().openRawResource(rawResourceId);
-            parse(is);
+            return parse(is, tolerance);
         } catch (IOException e) {
+            return null;
         } finally {
             if(is != null) try { is.close(); } catch(IOException e) {}
         }
     }
 
-    private void parse(Context context, String assetName) {
+    /*package*/ static SvgSvg parse(Context context, String assetName, float tolerance) {
+        // uncompressed assets are mapped in place, others are streamed
+        try {
+            return parse(context.getAssets().openFd(assetName), tolerance);
+        } catch (IOException e) {
+            // compressed asset
+        }
+
         InputStream is = null;
         try {
             is = context.getAssets().open(assetName);
-            parse(is);
+            return parse(is, tolerance);
         } catch (IOException e) {
+            return null;
         } finally {
             if(is != null) try { is.close(); } catch(IOException e) {}
         }
     }
 
-    private void parse(InputStream is) throws IOException {
-        SvgSvg root = new SvgSvg();
+    private static SvgSvg parse(AssetFileDescriptor afd, float tolerance) {
+        FileInputStream is = null;
+        try {
+            is = afd.createInputStream();
+            FileChannel channel = is.getChannel();
+            long length = afd.getLength();
+            if(length == AssetFileDescriptor.UNKNOWN_LENGTH) {
+                length = channel.size() - afd.getStartOffset();
+            }
+            return parse(channel, afd.getStartOffset(), length, tolerance);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if(is != null) try { is.close(); } catch(IOException e) {}
+            try { afd.close(); } catch(IOException e) {}
+        }
+    }
+
+    private static SvgSvg parse(FileChannel channel, long position, long size, float tolerance) {
+        try {
+            // the mapping stays valid after the channel is closed
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, position, size), tolerance);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /*package*/ static SvgSvg parse(ByteBuffer buffer) {
+        return parse(buffer, 0);
+    }
+
+    /**
+     * @param tolerance path simplification tolerance, see SvgSvg.getPathSimplificationTolerance()
+     */
+    /*package*/ static SvgSvg parse(ByteBuffer buffer, float tolerance) {
+        if(SvgCompiledFormat.isCompiled(buffer)) {
+            return load(buffer);
+        }
+
+        SvgSvg root = new SvgSvg(tolerance);
+        try {
+            root.parse(buffer);
+        } catch (Exception e) {
+            // pass
+        }
+        return root;
+    }
+
+    private static SvgSvg parse(InputStream is, float tolerance) throws IOException {
+        is = new BufferedInputStream(is);
+        if(SvgCompiledFormat.isCompiled(is)) {
+            return load(readDirect(is));
+        }
+
+        SvgSvg root = new SvgSvg(tolerance);
         try {
             root.parse(is);
         } catch (Exception e) {
             // pass
         }
-        root.setHolderDrawable(this);
-        mSvgRoot = root;
+        return root;
+    }
+
+    private static SvgSvg load(ByteBuffer compiled) {
+        SvgSvg root = new SvgSvg();
+        try {
+            SvgCompiledFormat.read(root, compiled);
+        } catch (Exception e) {
+            // pass
+        }
+        return root;
+    }
+
+    private static ByteBuffer readDirect(InputStream is) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(is);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(Math.max(is.available(), 4096));
+        while(channel.read(buffer) != -1) {
+            if(!buffer.hasRemaining()) {
+                ByteBuffer larger = ByteBuffer.allocateDirect(buffer.capacity() * 2);
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+        buffer.flip();
+        return buffer;
     }
 }
@@ -31,6 +31,8 @@ public class SvgDrawableView extends ImageView {
     private SvgDrawable mSvgDrawable;
     private Matrix mInverseMatrix = new Matrix();
     private Integer mForcedLayerType;
+    private boolean mSoftwareLayerSet;
+    private SvgLoader.Request mLoadRequest;
 
     public SvgDrawableView(Context context, String name) {
         super(context, null);
@@ -68,17 +70,33 @@ public class SvgDrawableView extends ImageView {
         }
     }
 
-    private void disableHardwareAccelerations() {
+    /**
+     * Use a software layer unless the drawable can be rendered with hardware acceleration.
+     */
+    private void updateLayerType(SvgDrawable d) {
         if(mForcedLayerType == null) {
-            try {
-                Method setLayerType = getClass().getMethod("setLayerType", int.class, Paint.class);
-                setLayerType.invoke(this, View.LAYER_TYPE_SOFTWARE, null);
-            } catch (Exception e) {
-                // pass
+            boolean software = !d.supportsHardwareAcceleration();
+            if(software != mSoftwareLayerSet) {
+                try {
+                    Method setLayerType = getClass().getMethod("setLayerType", int.class, Paint.class);
+                    setLayerType.invoke(this, software ? View.LAYER_TYPE_SOFTWARE : View.LAYER_TYPE_NONE, null);
+                    mSoftwareLayerSet = software;
+                } catch (Exception e) {
+                    // pass
+                }
             }
         }
     }
 
+    @Override
+    public void invalidateDrawable(Drawable dr) {
+        super.invalidateDrawable(dr);
+        // the drawable invalidates itself when its rendering mode changes
+        if(dr == mSvgDrawable) {
+            updateLayerType(mSvgDrawable);
+        }
+    }
+
     @Override
     protected void onSizeChanged(int w, int h, int oldw, int oldh) {
         super.onSizeChanged(w, h, oldw, oldh);
@@ -101,12 +119,37 @@ public class SvgDrawableView extends ImageView {
     public void setImageDrawable(Drawable d) {
         super.setImageDrawable(d);
         if(d instanceof SvgDrawable) {
-            disableHardwareAccelerations();
+            updateLayerType((SvgDrawable) d);
             mSvgDrawable = (SvgDrawable) d;
             updateMatrix();
         }
     }
 
+    /**
+     * Load a drawing in the background, the view stays empty until the drawing is available.
+     * Any pending load of this view is cancelled, which is what a recycled view needs.
+     */
+    public void loadAsync(SvgLoader loader, Object assetOrResourceId, int priority) {
+        cancelLoad();
+        mLoadRequest = loader.load(assetOrResourceId, priority, new SvgLoader.Callback() {
+            @Override
+            public void onSvgLoaded(SvgDrawable drawable) {
+                mLoadRequest = null;
+                // the intrinsic size is known now: force the image view to measure it again
+                setImageDrawable(null);
+                setImageDrawable(drawable);
+            }
+        });
+        setImageDrawable(mLoadRequest.getDrawable());
+    }
+
+    public void cancelLoad() {
+        if(mLoadRequest != null) {
+            mLoadRequest.cancel();
+            mLoadRequest = null;
+        }
+    }
+
     public SvgDrawable getSvgDrawable() {
         return mSvgDrawable;
     }
@@ -16,20 +16,33 @@
 package net.pierrox.android.lsvg;
 
 import android.graphics.Matrix;
+import android.graphics.RectF;
 
 public abstract class SvgElement {
     private String mId;
     private boolean mIsVisible = true;
     protected Matrix mTransform;
+    // parsed transforms are shared between elements with the same transform, see getTransform()
+    private boolean mTransformShared;
+    // set when getTransform() hands out the matrix, which the caller may modify before invalidate()
+    private boolean mTransformMayChange;
 
     protected SvgSvg mRoot;
     private SvgGroup mParent;
 
+    // bounds in document coordinates, computed on demand and kept up to date by invalidate()
+    /*package*/ final RectF mBounds = new RectF();
+    /*package*/ boolean mBoundsValid;
+    // bounds of the element or its subtree in its own coordinates, before its transform
+    private final RectF mLocalBounds = new RectF();
+    /*package*/ boolean mLocalBoundsValid;
+
     public SvgElement(SvgSvg root, SvgGroup parent, boolean isVisible, Matrix transform) {
         mRoot = root;
         mParent = parent;
         mIsVisible = isVisible;
         mTransform = transform;
+        mTransformShared = transform != null;
     }
 
     public SvgGroup getParent() {
@@ -50,30 +63,132 @@ public abstract class SvgElement {
 
     public void setVisible(boolean visible) {
         mIsVisible = visible;
-        invalidate();
+        invalidateStructure();
     }
 
     public void setTransform(Matrix transform) {
         mTransform = transform;
-        invalidate();
+        mTransformShared = false;
+        invalidateStructure();
     }
 
     public boolean setTransform(String specification) {
         try {
-            Matrix matrix = mRoot.parseTransform(specification);
-            mTransform = matrix;
-            invalidate();
+            setSharedTransform(mRoot.parseTransform(specification));
+            invalidateStructure();
             return true;
         } catch (Exception e) {
             return false;
         }
     }
 
+    /**
+     * Set a matrix which may be shared with other elements, such as a parsed transform: it is
+     * copied before being modified, see getTransform().
+     */
+    /*package*/ void setSharedTransform(Matrix transform) {
+        mTransform = transform;
+        mTransformShared = transform != null;
+    }
+
+    /**
+     * The returned matrix is a private copy that can be modified safely, call invalidate() or
+     * invalidateTransform() afterwards. Call this again before each modification.
+     */
     public Matrix getTransform() {
+        if(mTransformShared) {
+            mTransform = new Matrix(mTransform);
+            mTransformShared = false;
+        }
+        mTransformMayChange = mTransform != null;
         return mTransform;
     }
 
+    /**
+     * Notify the document that the matrix returned by getTransform() has been modified.
+     */
+    public void invalidateTransform() {
+        invalidateStructure();
+    }
+
+    /**
+     * Visibility and transform changes modify the display list, see SvgDisplayList.
+     */
+    /*package*/ void invalidateStructure() {
+        mRoot.onStructureChanged();
+        invalidate();
+    }
+
+    /**
+     * Return the bounds of this element in document coordinates, including transforms and stroke
+     * widths. Invisible elements have empty bounds.
+     */
+    public void getBounds(RectF out) {
+        if(!mBoundsValid) {
+            Matrix m = new Matrix();
+            getParentDocumentMatrix(m);
+            updateBounds(m);
+        }
+        out.set(mBounds);
+    }
+
+    /*package*/ RectF getLocalBounds() {
+        if(!mLocalBoundsValid) {
+            computeLocalBounds(mLocalBounds);
+            mLocalBoundsValid = true;
+        }
+        return mLocalBounds;
+    }
+
+    /*package*/ abstract void computeLocalBounds(RectF out);
+
+    /*package*/ void getParentDocumentMatrix(Matrix out) {
+        out.reset();
+        for(SvgElement e = mParent; e != null; e = e.mParent) {
+            if(e.mTransform != null) {
+                out.postConcat(e.mTransform);
+            }
+        }
+    }
+
+    /**
+     * Compute the bounds of this element and of its children.
+     * @param parentMatrix matrix from the parent coordinates to the document coordinates
+     */
+    /*package*/ abstract void updateBounds(Matrix parentMatrix);
+
+    /**
+     * Notify the document that this element has been modified. Only the area covered by the
+     * element before and after the modification needs to be redrawn. If the matrix returned by
+     * getTransform() may have been modified since the last call, this is a transform change.
+     */
     public void invalidate() {
-        mRoot.invalidate();
+        if(mTransformMayChange) {
+            mTransformMayChange = false;
+            invalidateStructure();
+            return;
+        }
+
+        SvgSvg root = mRoot;
+        // the bounds of the element and of its ancestors may have changed
+        for(SvgElement e = this; e != null; e = e.mParent) {
+            e.mLocalBoundsValid = false;
+        }
+        if(!mBoundsValid) {
+            // the area covered so far is unknown, the display list is still valid though
+            root.invalidateContent();
+            return;
+        }
+
+        RectF dirty = root.mTmpDirtyRect;
+        dirty.set(mBounds);
+        Matrix m = root.mTmpMatrix;
+        getParentDocumentMatrix(m);
+        updateBounds(m);
+        dirty.union(mBounds);
+        for(SvgGroup g = mParent; g != null; g = g.getParent()) {
+            g.updateBoundsFromChildren();
+        }
+        root.invalidate(dirty);
     }
 }
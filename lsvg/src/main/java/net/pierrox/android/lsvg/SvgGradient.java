@@ -15,7 +15,9 @@
  */
 package net.pierrox.android.lsvg;
 
+import android.graphics.Matrix;
 import android.graphics.Paint;
+import android.graphics.RectF;
 import android.graphics.Shader;
 import android.util.Log;
 
@@ -96,6 +98,24 @@ abstract class SvgGradient extends SvgElement {
         return mTileMode;
     }
 
+    @Override
+    /*package*/ void computeLocalBounds(RectF out) {
+        out.setEmpty();
+    }
+
+    @Override
+    /*package*/ void updateBounds(Matrix parentMatrix) {
+        // not drawn by itself
+        mBounds.setEmpty();
+        mBoundsValid = true;
+    }
+
+    @Override
+    public void invalidate() {
+        // the area of the elements using it is not tracked
+        mRoot.invalidateContent();
+    }
+
     void addUser(SvgElement svgElement) {
         if(mUsers == null) {
             mUsers = new ArrayList<>();
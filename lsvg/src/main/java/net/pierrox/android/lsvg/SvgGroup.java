@@ -16,6 +16,7 @@
 package net.pierrox.android.lsvg;
 
 import android.graphics.Matrix;
+import android.graphics.RectF;
 
 import java.util.ArrayList;
 
@@ -30,4 +31,77 @@ public class SvgGroup extends SvgElement {
     public ArrayList<SvgElement> getChildren() {
         return mChildren;
     }
+
+    @Override
+    public void invalidate() {
+        // children may have been added or removed
+        mRoot.onStructureChanged();
+        super.invalidate();
+    }
+
+    @Override
+    /*package*/ void computeLocalBounds(RectF out) {
+        out.setEmpty();
+        RectF r = null;
+        for(SvgElement e : mChildren) {
+            if(!e.isVisible()) {
+                continue;
+            }
+            RectF b = e.getLocalBounds();
+            if(e.mTransform != null) {
+                if(r == null) {
+                    r = new RectF();
+                }
+                e.mTransform.mapRect(r, b);
+                b = r;
+            }
+            out.union(b);
+        }
+    }
+
+    /**
+     * Drop the cached local bounds of the groups of this subtree, after structural changes.
+     */
+    /*package*/ void invalidateGroupLocalBounds() {
+        mLocalBoundsValid = false;
+        for(SvgElement e : mChildren) {
+            if(e instanceof SvgGroup) {
+                ((SvgGroup) e).invalidateGroupLocalBounds();
+            }
+        }
+    }
+
+    @Override
+    /*package*/ void updateBounds(Matrix parentMatrix) {
+        Matrix m = parentMatrix;
+        if(mTransform != null) {
+            m = new Matrix(parentMatrix);
+            m.preConcat(mTransform);
+        }
+        boolean visible = isVisible();
+        mBounds.setEmpty();
+        for(SvgElement e : mChildren) {
+            e.updateBounds(m);
+            if(visible) {
+                mBounds.union(e.mBounds);
+            }
+        }
+        mBoundsValid = true;
+    }
+
+    /*package*/ void updateBoundsFromChildren() {
+        if(!mBoundsValid) {
+            return;
+        }
+        mBounds.setEmpty();
+        if(isVisible()) {
+            for(SvgElement e : mChildren) {
+                if(!e.mBoundsValid) {
+                    mBoundsValid = false;
+                    return;
+                }
+                mBounds.union(e.mBounds);
+            }
+        }
+    }
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.io.File;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load drawings on a bounded pool of background threads.
+ * A load request immediately returns an empty SvgDrawable, which draws nothing until its tree has
+ * been parsed, then invalidates itself. Requests with a higher priority are served first, and
+ * pending requests can be cancelled, for instance when the view displaying them is recycled.
+ */
+public class SvgLoader {
+    public static final int PRIORITY_LOW = 0;
+    public static final int PRIORITY_NORMAL = 5;
+    public static final int PRIORITY_HIGH = 10;
+
+    public interface Callback {
+        /**
+         * Called on the main thread once the drawable tree is set. The intrinsic size of the
+         * drawable is known only from now on.
+         */
+        void onSvgLoaded(SvgDrawable drawable);
+    }
+
+    private static final int KEEP_ALIVE_SECONDS = 10;
+
+    private final Context mContext;
+    private final ThreadPoolExecutor mExecutor;
+    private final Handler mHandler;
+    private final AtomicLong mSequence = new AtomicLong();
+    private volatile float mPathSimplificationTolerance;
+
+    /**
+     * @param threadCount maximum number of drawings parsed concurrently
+     */
+    public SvgLoader(Context context, int threadCount) {
+        mContext = context.getApplicationContext();
+        mHandler = new Handler(Looper.getMainLooper());
+        mExecutor = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new LoaderThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Simplify the paths of the drawings requested from now on, see SvgDrawable(Context, Object, float).
+     */
+    public void setPathSimplificationTolerance(float tolerance) {
+        mPathSimplificationTolerance = tolerance;
+    }
+
+    public Request load(Object assetOrResourceId, int priority, Callback callback) {
+        return enqueue(new Request(assetOrResourceId, priority, callback));
+    }
+
+    public Request load(File file, int priority, Callback callback) {
+        return enqueue(new Request(file, priority, callback));
+    }
+
+    /**
+     * Cancel pending requests and stop the background threads. This loader cannot be used anymore.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    private Request enqueue(Request request) {
+        mExecutor.execute(request);
+        return request;
+    }
+
+    public class Request implements Runnable, Comparable<Request> {
+        private final Object mSource;
+        private final Callback mCallback;
+        private final SvgDrawable mDrawable;
+        private final float mTolerance;
+        // requests with the same priority are served in order
+        private final long mSequence;
+        private volatile int mPriority;
+        private volatile boolean mCancelled;
+
+        private Request(Object source, int priority, Callback callback) {
+            mSource = source;
+            mPriority = priority;
+            mCallback = callback;
+            mDrawable = new SvgDrawable();
+            mTolerance = mPathSimplificationTolerance;
+            mSequence = SvgLoader.this.mSequence.getAndIncrement();
+        }
+
+        /**
+         * Return the drawable being loaded, empty until the load completes.
+         */
+        public SvgDrawable getDrawable() {
+            return mDrawable;
+        }
+
+        /**
+         * Change the priority of a pending request, for instance when its view becomes visible.
+         */
+        public void setPriority(int priority) {
+            if(mExecutor.remove(this)) {
+                mPriority = priority;
+                mExecutor.execute(this);
+            }
+        }
+
+        /**
+         * Cancel this request. The drawable is left empty and the callback is not called.
+         * Must be called from the main thread.
+         */
+        public void cancel() {
+            mCancelled = true;
+            mExecutor.remove(this);
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public void run() {
+            if(mCancelled) {
+                return;
+            }
+
+            // computed here since identifying a file needs to access it
+            final String sourceKey = SvgDrawable.getSourceKey(mSource, mTolerance);
+            final SvgSvg root = SvgDrawable.parse(mContext, mSource, mTolerance);
+
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if(mCancelled) {
+                        return;
+                    }
+                    mDrawable.setSvgRoot(root, sourceKey);
+                    if(mCallback != null) {
+                        mCallback.onSvgLoaded(mDrawable);
+                    }
+                }
+            });
+        }
+
+        @Override
+        public int compareTo(Request other) {
+            if(mPriority != other.mPriority) {
+                return mPriority > other.mPriority ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : (mSequence == other.mSequence ? 0 : 1);
+        }
+    }
+
+    private static class LoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // keep the UI thread responsive
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "SvgLoader #" + mCount.incrementAndGet());
+        }
+    }
+}
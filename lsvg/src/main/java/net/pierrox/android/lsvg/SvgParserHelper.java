@@ -42,6 +42,19 @@ public class SvgParserHelper {
         current = s.charAt(pos);
     }
 
+    /*package*/ SvgParserHelper() {
+    }
+
+    /**
+     * Reuse this helper to scan s from pos (inclusive) to end (exclusive).
+     */
+    /*package*/ void reset(CharSequence s, int pos, int end) {
+        this.s = s;
+        this.pos = pos;
+        n = end;
+        current = pos < end ? s.charAt(pos) : '\0';
+    }
+
     private char read() {
         if (pos < n) {
             pos++;
@@ -18,18 +18,34 @@ package net.pierrox.android.lsvg;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.RectF;
 
 public class SvgPath extends SvgElement {
+    private SvgPathData mPathData;
+    // from the fill-rule of the style, kept here so that hit testing does not need the native path
+    private Path.FillType mFillType;
+    // native path, built from mPathData on first use
     private Path mPath;
+    // simplified native path used at low levels of detail, and its tolerance
+    private Path mFlattenedPath;
+    private float mFlattenedPathTolerance;
+    // line segments used for hit testing, and their tolerance
+    private SvgPathData mHitTestData;
+    private float mHitTestTolerance;
     /*package*/ Paint fillPaint;
     /*package*/ Paint strokePaint;
+    // the style the paints have been built from, needed to serialize gradients and dashes
+    /*package*/ SvgStyle style;
+    private static final float SQRT_2 = 1.4142135f;
 
 
-    SvgPath(SvgSvg root, SvgGroup parent, boolean isVisible, Matrix transform, Path path, Paint fillPaint, Paint strokePaint) {
-        super(root, parent, isVisible, transform);
-        this.mPath = path;
-        this.fillPaint = fillPaint;
-        this.strokePaint = strokePaint;
+    SvgPath(SvgSvg root, SvgGroup parent, Matrix transform, SvgPathData pathData, SvgStyle style) {
+        super(root, parent, style.isVisible, transform);
+        this.mPathData = pathData;
+        this.mFillType = getFillType(style);
+        this.fillPaint = style.fillPaint;
+        this.strokePaint = style.strokePaint;
+        this.style = style;
     }
 
     public void setFillPaint(Paint fillPaint) {
@@ -37,7 +53,14 @@ public class SvgPath extends SvgElement {
         invalidate();
     }
 
+    /**
+     * Paints parsed from a style are shared between elements with the same style: the paint
+     * returned here is a private copy that can be modified safely.
+     */
     public Paint getFillPaint() {
+        if(fillPaint != null && fillPaint == style.fillPaint) {
+            fillPaint = new Paint(fillPaint);
+        }
         return fillPaint;
     }
 
@@ -46,13 +69,22 @@ public class SvgPath extends SvgElement {
         invalidate();
     }
 
+    /**
+     * @see #getFillPaint()
+     */
     public Paint getStrokePaint() {
+        if(strokePaint != null && strokePaint == style.strokePaint) {
+            strokePaint = new Paint(strokePaint);
+        }
         return strokePaint;
     }
 
     public boolean setPath(String d) {
         try {
-            this.mPath = mRoot.parsePath(d);
+            this.mPathData = SvgSvg.parsePath(d);
+            this.mPath = null;
+            this.mFlattenedPath = null;
+            this.mHitTestData = null;
             invalidate();
             return true;
         } catch (Exception e) {
@@ -61,16 +93,120 @@ public class SvgPath extends SvgElement {
     }
 
     public Path getPath() {
+        if(mPath == null) {
+            mPath = mPathData.toPath();
+            mPath.setFillType(mFillType);
+        }
         return mPath;
     }
 
+    public Path.FillType getFillType() {
+        return mFillType;
+    }
+
+    public void setFillType(Path.FillType fillType) {
+        mFillType = fillType;
+        if(mPath != null) {
+            mPath.setFillType(fillType);
+        }
+        if(mFlattenedPath != null) {
+            mFlattenedPath.setFillType(fillType);
+        }
+        invalidate();
+    }
+
+    private static Path.FillType getFillType(SvgStyle style) {
+        return style.fillEvenOdd ? Path.FillType.EVEN_ODD : Path.FillType.WINDING;
+    }
+
+    /**
+     * Release the native path, it will be rebuilt when needed.
+     * Modifications made directly on the object returned by {@link #getPath()} are lost.
+     */
+    public void releasePath() {
+        mPath = null;
+        mFlattenedPath = null;
+        mHitTestData = null;
+    }
+
+    /**
+     * Return the path with curves replaced by line segments, within the given tolerance.
+     */
+    /*package*/ Path getFlattenedPath(float tolerance) {
+        if(mFlattenedPath == null || mFlattenedPathTolerance != tolerance) {
+            mFlattenedPath = mPathData.toFlattenedPath(tolerance);
+            mFlattenedPath.setFillType(mFillType);
+            mFlattenedPathTolerance = tolerance;
+        }
+        return mFlattenedPath;
+    }
+
+    /**
+     * Return true if the point, in the coordinates of this path, is inside its fill according to
+     * the fill type of the path. Curves are approximated by line segments within the tolerance.
+     */
+    /*package*/ boolean contains(float x, float y, float tolerance) {
+        if(mHitTestData == null || mHitTestTolerance != tolerance) {
+            mHitTestData = mPathData.flatten(tolerance);
+            mHitTestTolerance = tolerance;
+        }
+        int winding = mHitTestData.getWindingNumber(x, y);
+        switch(mFillType) {
+            case EVEN_ODD: return (winding & 1) != 0;
+            case INVERSE_WINDING: return winding == 0;
+            case INVERSE_EVEN_ODD: return (winding & 1) == 0;
+            default: return winding != 0;
+        }
+    }
+
+    /*package*/ SvgPathData getPathData() {
+        return mPathData;
+    }
+
+    @Override
+    /*package*/ void computeLocalBounds(RectF out) {
+        if(fillPaint == null && strokePaint == null) {
+            out.setEmpty();
+        } else {
+            mPathData.computeBounds(out);
+            if(strokePaint != null) {
+                float outset = getStrokeOutset(strokePaint);
+                out.inset(-outset, -outset);
+            }
+        }
+    }
+
+    // distance a stroke may extend beyond the path, miter joins and square caps included
+    private static float getStrokeOutset(Paint p) {
+        float scale = p.getStrokeCap() == Paint.Cap.SQUARE ? SQRT_2 : 1;
+        if(p.getStrokeJoin() == Paint.Join.MITER) {
+            scale = Math.max(scale, p.getStrokeMiter());
+        }
+        return p.getStrokeWidth() / 2 * scale;
+    }
+
+    @Override
+    /*package*/ void updateBounds(Matrix parentMatrix) {
+        if(isVisible()) {
+            mBounds.set(getLocalBounds());
+            if(mTransform != null) {
+                mTransform.mapRect(mBounds);
+            }
+            parentMatrix.mapRect(mBounds);
+        } else {
+            mBounds.setEmpty();
+        }
+        mBoundsValid = true;
+    }
+
     public boolean setStyle(String style) {
         try {
-            SvgSvg.ParsedStyle parsedStyle = mRoot.parseStyle(style);
+            SvgStyle parsedStyle = mRoot.parseStyle(style);
             setVisible(parsedStyle.isVisible);
             this.fillPaint = parsedStyle.fillPaint;
             this.strokePaint = parsedStyle.strokePaint;
-            invalidate();
+            this.style = parsedStyle;
+            setFillType(getFillType(parsedStyle));
             return true;
         } catch (Exception e) {
             return false;
@@ -0,0 +1,362 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.graphics.Path;
+import android.graphics.RectF;
+
+/**
+ * Primitive description of a path: a list of verbs and their absolute coordinates.
+ * It can be replayed into an android.graphics.Path and stored as is in the compiled format.
+ */
+final class SvgPathData {
+    static final byte VERB_MOVE = 0;
+    static final byte VERB_LINE = 1;
+    static final byte VERB_QUAD = 2;
+    static final byte VERB_CUBIC = 3;
+    static final byte VERB_CLOSE = 4;
+
+    private static final int[] VERB_COORD_COUNT = { 2, 2, 4, 6, 0 };
+
+    // magic number for the approximation of a quarter of circle with a cubic Bézier curve
+    private static final float KAPPA = 0.5522847498f;
+
+    private static final int MAX_FLATTENING_SEGMENTS = 64;
+
+    byte[] verbs;
+    int verbCount;
+    float[] coords;
+    int coordCount;
+
+    SvgPathData() {
+        verbs = new byte[16];
+        coords = new float[32];
+    }
+
+    SvgPathData(byte[] verbs, float[] coords) {
+        this.verbs = verbs;
+        this.verbCount = verbs.length;
+        this.coords = coords;
+        this.coordCount = coords.length;
+    }
+
+    static int getCoordCount(byte verb) {
+        return VERB_COORD_COUNT[verb];
+    }
+
+    /**
+     * Return the number of drawing verbs, moves and closes excluded.
+     */
+    int getSegmentCount() {
+        int count = 0;
+        for(int i = 0; i < verbCount; i++) {
+            byte verb = verbs[i];
+            if(verb != VERB_MOVE && verb != VERB_CLOSE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    void moveTo(float x, float y) {
+        if(verbCount > 0 && verbs[verbCount - 1] == VERB_MOVE) {
+            // consecutive moves: only the last one matters
+            coords[coordCount - 2] = x;
+            coords[coordCount - 1] = y;
+            return;
+        }
+        addVerb(VERB_MOVE, 2);
+        coords[coordCount++] = x;
+        coords[coordCount++] = y;
+    }
+
+    void lineTo(float x, float y) {
+        addVerb(VERB_LINE, 2);
+        coords[coordCount++] = x;
+        coords[coordCount++] = y;
+    }
+
+    void quadTo(float x1, float y1, float x, float y) {
+        addVerb(VERB_QUAD, 4);
+        coords[coordCount++] = x1;
+        coords[coordCount++] = y1;
+        coords[coordCount++] = x;
+        coords[coordCount++] = y;
+    }
+
+    void cubicTo(float x1, float y1, float x2, float y2, float x, float y) {
+        addVerb(VERB_CUBIC, 6);
+        coords[coordCount++] = x1;
+        coords[coordCount++] = y1;
+        coords[coordCount++] = x2;
+        coords[coordCount++] = y2;
+        coords[coordCount++] = x;
+        coords[coordCount++] = y;
+    }
+
+    void close() {
+        addVerb(VERB_CLOSE, 0);
+    }
+
+    void addRect(RectF r) {
+        moveTo(r.left, r.top);
+        lineTo(r.right, r.top);
+        lineTo(r.right, r.bottom);
+        lineTo(r.left, r.bottom);
+        close();
+    }
+
+    void addRoundRect(RectF r, float rx, float ry) {
+        if(rx <= 0 || ry <= 0) {
+            addRect(r);
+            return;
+        }
+        rx = Math.min(rx, r.width() / 2);
+        ry = Math.min(ry, r.height() / 2);
+        float kx = rx * KAPPA;
+        float ky = ry * KAPPA;
+        moveTo(r.left + rx, r.top);
+        lineTo(r.right - rx, r.top);
+        cubicTo(r.right - rx + kx, r.top, r.right, r.top + ry - ky, r.right, r.top + ry);
+        lineTo(r.right, r.bottom - ry);
+        cubicTo(r.right, r.bottom - ry + ky, r.right - rx + kx, r.bottom, r.right - rx, r.bottom);
+        lineTo(r.left + rx, r.bottom);
+        cubicTo(r.left + rx - kx, r.bottom, r.left, r.bottom - ry + ky, r.left, r.bottom - ry);
+        lineTo(r.left, r.top + ry);
+        cubicTo(r.left, r.top + ry - ky, r.left + rx - kx, r.top, r.left + rx, r.top);
+        close();
+    }
+
+    void addOval(RectF r) {
+        float cx = r.centerX();
+        float cy = r.centerY();
+        float kx = r.width() / 2 * KAPPA;
+        float ky = r.height() / 2 * KAPPA;
+        moveTo(r.right, cy);
+        cubicTo(r.right, cy + ky, cx + kx, r.bottom, cx, r.bottom);
+        cubicTo(cx - kx, r.bottom, r.left, cy + ky, r.left, cy);
+        cubicTo(r.left, cy - ky, cx - kx, r.top, cx, r.top);
+        cubicTo(cx + kx, r.top, r.right, cy - ky, r.right, cy);
+        close();
+    }
+
+    /**
+     * Compute the bounds of the points and control points, which contain the path.
+     */
+    void computeBounds(RectF out) {
+        if(coordCount == 0) {
+            out.setEmpty();
+            return;
+        }
+        float[] c = coords;
+        float left = c[0], top = c[1], right = left, bottom = top;
+        for(int i = 2; i < coordCount; i += 2) {
+            float x = c[i];
+            float y = c[i + 1];
+            if(x < left) left = x; else if(x > right) right = x;
+            if(y < top) top = y; else if(y > bottom) bottom = y;
+        }
+        out.set(left, top, right, bottom);
+    }
+
+    /**
+     * Release the unused capacity once the path is complete.
+     */
+    void trim() {
+        if(verbs.length != verbCount) {
+            byte[] v = new byte[verbCount];
+            System.arraycopy(verbs, 0, v, 0, verbCount);
+            verbs = v;
+        }
+        if(coords.length != coordCount) {
+            float[] c = new float[coordCount];
+            System.arraycopy(coords, 0, c, 0, coordCount);
+            coords = c;
+        }
+    }
+
+    Path toPath() {
+        Path p = new Path();
+        float[] c = coords;
+        int ci = 0;
+        for(int i = 0; i < verbCount; i++) {
+            switch(verbs[i]) {
+                case VERB_MOVE:
+                    p.moveTo(c[ci], c[ci + 1]);
+                    break;
+                case VERB_LINE:
+                    p.lineTo(c[ci], c[ci + 1]);
+                    break;
+                case VERB_QUAD:
+                    p.quadTo(c[ci], c[ci + 1], c[ci + 2], c[ci + 3]);
+                    break;
+                case VERB_CUBIC:
+                    p.cubicTo(c[ci], c[ci + 1], c[ci + 2], c[ci + 3], c[ci + 4], c[ci + 5]);
+                    break;
+                case VERB_CLOSE:
+                    p.close();
+                    break;
+            }
+            ci += VERB_COORD_COUNT[verbs[i]];
+        }
+        return p;
+    }
+
+    /**
+     * Build a path where curves are replaced by line segments, deviating from the curves by at
+     * most the given tolerance.
+     */
+    Path toFlattenedPath(float tolerance) {
+        return flatten(tolerance).toPath();
+    }
+
+    /**
+     * Return a copy of this path where curves are replaced by line segments, deviating from the
+     * curves by at most the given tolerance.
+     */
+    SvgPathData flatten(float tolerance) {
+        SvgPathData p = new SvgPathData();
+        float[] c = coords;
+        int ci = 0;
+        float x = 0, y = 0, startX = 0, startY = 0;
+        for(int i = 0; i < verbCount; i++) {
+            switch(verbs[i]) {
+                case VERB_MOVE:
+                    x = startX = c[ci];
+                    y = startY = c[ci + 1];
+                    p.moveTo(x, y);
+                    break;
+                case VERB_LINE:
+                    x = c[ci];
+                    y = c[ci + 1];
+                    p.lineTo(x, y);
+                    break;
+                case VERB_QUAD: {
+                    float x1 = c[ci], y1 = c[ci + 1], x2 = c[ci + 2], y2 = c[ci + 3];
+                    int n = getSegmentCount(0.25f * length(x - 2 * x1 + x2, y - 2 * y1 + y2), tolerance);
+                    for(int k = 1; k < n; k++) {
+                        float t = (float) k / n, u = 1 - t;
+                        p.lineTo(u * u * x + 2 * u * t * x1 + t * t * x2, u * u * y + 2 * u * t * y1 + t * t * y2);
+                    }
+                    x = x2;
+                    y = y2;
+                    p.lineTo(x, y);
+                    break;
+                }
+                case VERB_CUBIC: {
+                    float x1 = c[ci], y1 = c[ci + 1], x2 = c[ci + 2], y2 = c[ci + 3], x3 = c[ci + 4], y3 = c[ci + 5];
+                    float dd = Math.max(length(x - 2 * x1 + x2, y - 2 * y1 + y2), length(x1 - 2 * x2 + x3, y1 - 2 * y2 + y3));
+                    int n = getSegmentCount(0.75f * dd, tolerance);
+                    for(int k = 1; k < n; k++) {
+                        float t = (float) k / n, u = 1 - t;
+                        float a = u * u * u, b = 3 * u * u * t, d = 3 * u * t * t, e = t * t * t;
+                        p.lineTo(a * x + b * x1 + d * x2 + e * x3, a * y + b * y1 + d * y2 + e * y3);
+                    }
+                    x = x3;
+                    y = y3;
+                    p.lineTo(x, y);
+                    break;
+                }
+                case VERB_CLOSE:
+                    p.close();
+                    x = startX;
+                    y = startY;
+                    break;
+            }
+            ci += VERB_COORD_COUNT[verbs[i]];
+        }
+        p.trim();
+        return p;
+    }
+
+    /**
+     * Return the winding number of the path around the point, each contour being implicitly
+     * closed as when filling. The path must be made of lines only, see flatten().
+     */
+    int getWindingNumber(float px, float py) {
+        float[] c = coords;
+        int ci = 0;
+        int winding = 0;
+        float x = 0, y = 0, startX = 0, startY = 0;
+        for(int i = 0; i <= verbCount; i++) {
+            // the end of the path closes the last contour
+            byte verb = i < verbCount ? verbs[i] : VERB_MOVE;
+            float nx, ny;
+            if(verb == VERB_LINE) {
+                nx = c[ci];
+                ny = c[ci + 1];
+            } else {
+                nx = startX;
+                ny = startY;
+            }
+            winding += crossing(x, y, nx, ny, px, py);
+            x = nx;
+            y = ny;
+            if(verb == VERB_MOVE && i < verbCount) {
+                x = startX = c[ci];
+                y = startY = c[ci + 1];
+            }
+            if(i < verbCount) {
+                ci += VERB_COORD_COUNT[verb];
+            }
+        }
+        return winding;
+    }
+
+    // contribution of an edge to the winding number: +1 or -1 depending on its direction if it
+    // crosses the horizontal half line starting at the point towards increasing x, 0 otherwise
+    private static int crossing(float x0, float y0, float x1, float y1, float px, float py) {
+        if(y0 <= py) {
+            if(y1 > py && cross(x0, y0, x1, y1, px, py) > 0) {
+                return 1;
+            }
+        } else if(y1 <= py && cross(x0, y0, x1, y1, px, py) < 0) {
+            return -1;
+        }
+        return 0;
+    }
+
+    // positive if the point is on the left of the edge, negative if on its right (y up)
+    private static float cross(float x0, float y0, float x1, float y1, float px, float py) {
+        return (x1 - x0) * (py - y0) - (px - x0) * (y1 - y0);
+    }
+
+    // number of segments needed to approximate a curve within the tolerance (Wang's formula)
+    private static int getSegmentCount(float deviation, float tolerance) {
+        int n = (int) Math.ceil(Math.sqrt(deviation / tolerance));
+        return n < 1 ? 1 : (n > MAX_FLATTENING_SEGMENTS ? MAX_FLATTENING_SEGMENTS : n);
+    }
+
+    private static float length(float dx, float dy) {
+        return (float) Math.sqrt(dx * dx + dy * dy);
+    }
+
+    private void addVerb(byte verb, int coordCount) {
+        if(verbCount == verbs.length) {
+            byte[] v = new byte[Math.max(16, verbCount * 2)];
+            System.arraycopy(verbs, 0, v, 0, verbCount);
+            verbs = v;
+        }
+        verbs[verbCount++] = verb;
+
+        int needed = this.coordCount + coordCount;
+        if(needed > coords.length) {
+            float[] c = new float[Math.max(needed, coords.length * 2)];
+            System.arraycopy(coords, 0, c, 0, this.coordCount);
+            coords = c;
+        }
+    }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.graphics.RectF;
+
+import java.util.Arrays;
+
+/**
+ * Bounding volume hierarchy over the document bounds of the paths of a display list, used to find
+ * the few paths which may contain a point. The hierarchy is built again when the structure of the
+ * tree changes, and only its boxes are updated when paths are modified.
+ * Nodes are stored in arrays: the children of an inner node are consecutive, and are always
+ * stored after their parent.
+ */
+final class SvgPathIndex {
+    private static final int LEAF_SIZE = 4;
+
+    private SvgSvg mRoot;
+    private int mStructureVersion;
+    private int mModificationCount;
+    private boolean mBuilt;
+
+    // display list indices of the paths, grouped by leaf
+    private int[] mItems = new int[16];
+    private int mItemCount;
+
+    private int mNodeCount;
+    // left, top, right, bottom of each node
+    private float[] mBoxes = new float[16 * 4];
+    // leaves: first item and item count, inner nodes: first child and 0
+    private int[] mStart = new int[16];
+    private int[] mCount = new int[16];
+
+    private long[] mTmpKeys = new long[16];
+    private int[] mStack = new int[32];
+
+    private int[] mCandidates = new int[16];
+    private int mCandidateCount;
+
+    /**
+     * Build or refit the hierarchy if the tree changed since the last call. The display list must
+     * be up to date and the bounds of the tree valid.
+     */
+    void update(SvgSvg root, SvgDisplayList list) {
+        int version = root.getStructureVersion();
+        int modificationCount = root.getModificationCount();
+        if(!mBuilt || root != mRoot || version != mStructureVersion) {
+            build(list);
+            mRoot = root;
+            mStructureVersion = version;
+            mBuilt = true;
+        } else if(modificationCount != mModificationCount) {
+            refit(list);
+        }
+        mModificationCount = modificationCount;
+    }
+
+    /**
+     * Collect the paths whose bounds contain the point, topmost first.
+     * @return the number of candidates, see getCandidate()
+     */
+    int findCandidates(SvgDisplayList list, float x, float y) {
+        mCandidateCount = 0;
+        if(mNodeCount == 0) {
+            return 0;
+        }
+
+        SvgElement[] elements = list.elements;
+        float[] boxes = mBoxes;
+        int sp = 0;
+        mStack[sp++] = 0;
+        while(sp > 0) {
+            int node = mStack[--sp];
+            int b = node * 4;
+            if(x < boxes[b] || y < boxes[b + 1] || x > boxes[b + 2] || y > boxes[b + 3]) {
+                continue;
+            }
+            int count = mCount[node];
+            int start = mStart[node];
+            if(count == 0) {
+                if(sp + 2 > mStack.length) {
+                    mStack = Arrays.copyOf(mStack, mStack.length * 2);
+                }
+                mStack[sp++] = start;
+                mStack[sp++] = start + 1;
+            } else {
+                for(int i = start, end = start + count; i < end; i++) {
+                    int item = mItems[i];
+                    if(contains(elements[item].mBounds, x, y)) {
+                        addCandidate(item);
+                    }
+                }
+            }
+        }
+        return mCandidateCount;
+    }
+
+    int getCandidate(int n) {
+        return mCandidates[n];
+    }
+
+    private void addCandidate(int item) {
+        if(mCandidateCount == mCandidates.length) {
+            mCandidates = Arrays.copyOf(mCandidates, mCandidateCount * 2);
+        }
+        // insertion in decreasing order, later entries are drawn above earlier ones
+        int i = mCandidateCount++;
+        while(i > 0 && mCandidates[i - 1] < item) {
+            mCandidates[i] = mCandidates[i - 1];
+            i--;
+        }
+        mCandidates[i] = item;
+    }
+
+    private static boolean contains(RectF r, float x, float y) {
+        return x >= r.left && y >= r.top && x <= r.right && y <= r.bottom;
+    }
+
+    private void build(SvgDisplayList list) {
+        mItemCount = 0;
+        for(int i = 0; i < list.count; i++) {
+            if(list.paths[i] != null) {
+                if(mItemCount == mItems.length) {
+                    mItems = Arrays.copyOf(mItems, mItemCount * 2);
+                }
+                mItems[mItemCount++] = i;
+            }
+        }
+
+        mNodeCount = 0;
+        if(mItemCount == 0) {
+            return;
+        }
+        if(mTmpKeys.length < mItemCount) {
+            mTmpKeys = new long[mItemCount];
+        }
+        int root = allocateNodes(1);
+        build(list.elements, root, 0, mItemCount);
+    }
+
+    private void build(SvgElement[] elements, int node, int from, int to) {
+        setBox(elements, node, from, to);
+
+        int count = to - from;
+        if(count <= LEAF_SIZE) {
+            mStart[node] = from;
+            mCount[node] = count;
+            return;
+        }
+
+        // split at the median of the centers along the longest axis of the node
+        int b = node * 4;
+        boolean horizontal = mBoxes[b + 2] - mBoxes[b] >= mBoxes[b + 3] - mBoxes[b + 1];
+        long[] keys = mTmpKeys;
+        for(int i = from; i < to; i++) {
+            int item = mItems[i];
+            RectF r = elements[item].mBounds;
+            float center = horizontal ? r.centerX() : r.centerY();
+            keys[i] = SvgSortKeys.make(center, item);
+        }
+        Arrays.sort(keys, from, to);
+        for(int i = from; i < to; i++) {
+            mItems[i] = SvgSortKeys.getIndex(keys[i]);
+        }
+
+        int mid = (from + to) / 2;
+        int children = allocateNodes(2);
+        mStart[node] = children;
+        mCount[node] = 0;
+        build(elements, children, from, mid);
+        build(elements, children + 1, mid, to);
+    }
+
+    /**
+     * Update the node boxes from the current bounds of the paths, keeping the hierarchy.
+     */
+    private void refit(SvgDisplayList list) {
+        SvgElement[] elements = list.elements;
+        float[] boxes = mBoxes;
+        // children are stored after their parent
+        for(int node = mNodeCount - 1; node >= 0; node--) {
+            int start = mStart[node];
+            int count = mCount[node];
+            if(count > 0) {
+                setBox(elements, node, start, start + count);
+            } else {
+                int b = node * 4;
+                int l = start * 4;
+                int r = l + 4;
+                boxes[b] = Math.min(boxes[l], boxes[r]);
+                boxes[b + 1] = Math.min(boxes[l + 1], boxes[r + 1]);
+                boxes[b + 2] = Math.max(boxes[l + 2], boxes[r + 2]);
+                boxes[b + 3] = Math.max(boxes[l + 3], boxes[r + 3]);
+            }
+        }
+    }
+
+    private void setBox(SvgElement[] elements, int node, int from, int to) {
+        float left = Float.POSITIVE_INFINITY;
+        float top = Float.POSITIVE_INFINITY;
+        float right = Float.NEGATIVE_INFINITY;
+        float bottom = Float.NEGATIVE_INFINITY;
+        for(int i = from; i < to; i++) {
+            RectF r = elements[mItems[i]].mBounds;
+            if(r.left < left) left = r.left;
+            if(r.top < top) top = r.top;
+            if(r.right > right) right = r.right;
+            if(r.bottom > bottom) bottom = r.bottom;
+        }
+        int b = node * 4;
+        mBoxes[b] = left;
+        mBoxes[b + 1] = top;
+        mBoxes[b + 2] = right;
+        mBoxes[b + 3] = bottom;
+    }
+
+    private int allocateNodes(int count) {
+        int node = mNodeCount;
+        mNodeCount += count;
+        if(mNodeCount > mStart.length) {
+            int length = Math.max(mNodeCount, mStart.length * 2);
+            mStart = Arrays.copyOf(mStart, length);
+            mCount = Arrays.copyOf(mCount, length);
+            mBoxes = Arrays.copyOf(mBoxes, length * 4);
+        }
+        return node;
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+/**
+ * Simplify parsed paths within a tolerance, before native paths are built:
+ * - segments ending within the tolerance of the current point are dropped,
+ * - curves whose control points are within the tolerance of their chord become lines,
+ * - runs of lines are reduced with the Douglas-Peucker algorithm, which merges collinear segments.
+ * This is not curve aware: other curves are kept as they are, they are neither merged nor
+ * refitted, and they end runs of lines. Drawings made mostly of curves are barely simplified.
+ * An instance is bound to a document and is not thread safe.
+ */
+final class SvgPathSimplifier {
+    private float mTolerance;
+    private SvgPathData mOut;
+    // pending run of lines, as x,y pairs starting with the current point of the output path
+    private float[] mRun = new float[64];
+    private int mRunLength;
+    private boolean[] mKeep = new boolean[32];
+    private int[] mStack = new int[64];
+
+    /**
+     * Simplify the path in place, return the number of segments removed.
+     */
+    int simplify(SvgPathData data, float tolerance) {
+        mTolerance = tolerance;
+        mOut = new SvgPathData();
+        mRunLength = 0;
+        startRun(0, 0);
+
+        byte[] verbs = data.verbs;
+        float[] c = data.coords;
+        int ci = 0;
+        float startX = 0, startY = 0;
+        for(int i = 0; i < data.verbCount; i++) {
+            byte verb = verbs[i];
+            float x = mRun[mRunLength - 2];
+            float y = mRun[mRunLength - 1];
+            switch(verb) {
+                case SvgPathData.VERB_MOVE:
+                    flushRun();
+                    startX = c[ci];
+                    startY = c[ci + 1];
+                    mOut.moveTo(startX, startY);
+                    startRun(startX, startY);
+                    break;
+                case SvgPathData.VERB_LINE:
+                    lineTo(c[ci], c[ci + 1]);
+                    break;
+                case SvgPathData.VERB_QUAD:
+                    if(isNear(c[ci], c[ci + 1], x, y, c[ci + 2], c[ci + 3])) {
+                        lineTo(c[ci + 2], c[ci + 3]);
+                    } else {
+                        flushRun();
+                        mOut.quadTo(c[ci], c[ci + 1], c[ci + 2], c[ci + 3]);
+                        startRun(c[ci + 2], c[ci + 3]);
+                    }
+                    break;
+                case SvgPathData.VERB_CUBIC:
+                    if(isNear(c[ci], c[ci + 1], x, y, c[ci + 4], c[ci + 5]) && isNear(c[ci + 2], c[ci + 3], x, y, c[ci + 4], c[ci + 5])) {
+                        lineTo(c[ci + 4], c[ci + 5]);
+                    } else {
+                        flushRun();
+                        mOut.cubicTo(c[ci], c[ci + 1], c[ci + 2], c[ci + 3], c[ci + 4], c[ci + 5]);
+                        startRun(c[ci + 4], c[ci + 5]);
+                    }
+                    break;
+                case SvgPathData.VERB_CLOSE:
+                    flushRun();
+                    mOut.close();
+                    startRun(startX, startY);
+                    break;
+            }
+            ci += SvgPathData.getCoordCount(verb);
+        }
+        flushRun();
+
+        SvgPathData out = mOut;
+        mOut = null;
+        out.trim();
+        int removed = data.getSegmentCount() - out.getSegmentCount();
+        data.verbs = out.verbs;
+        data.verbCount = out.verbCount;
+        data.coords = out.coords;
+        data.coordCount = out.coordCount;
+        return removed;
+    }
+
+    private void startRun(float x, float y) {
+        mRun[0] = x;
+        mRun[1] = y;
+        mRunLength = 2;
+    }
+
+    private void lineTo(float x, float y) {
+        float dx = x - mRun[mRunLength - 2];
+        float dy = y - mRun[mRunLength - 1];
+        if(dx * dx + dy * dy <= mTolerance * mTolerance) {
+            // degenerate or too short
+            return;
+        }
+        if(mRunLength == mRun.length) {
+            float[] run = new float[mRunLength * 2];
+            System.arraycopy(mRun, 0, run, 0, mRunLength);
+            mRun = run;
+        }
+        mRun[mRunLength++] = x;
+        mRun[mRunLength++] = y;
+    }
+
+    /**
+     * Emit the pending run of lines, reduced with the Douglas-Peucker algorithm.
+     */
+    private void flushRun() {
+        int count = mRunLength / 2;
+        if(count < 2) {
+            return;
+        }
+
+        if(mKeep.length < count) {
+            mKeep = new boolean[count * 2];
+        }
+        boolean[] keep = mKeep;
+        for(int i = 0; i < count; i++) {
+            keep[i] = false;
+        }
+        keep[0] = true;
+        keep[count - 1] = true;
+
+        float[] p = mRun;
+        float sqTolerance = mTolerance * mTolerance;
+        int sp = 0;
+        sp = push(sp, 0, count - 1);
+        while(sp > 0) {
+            int last = mStack[--sp];
+            int first = mStack[--sp];
+            float maxSqDistance = 0;
+            int index = -1;
+            for(int i = first + 1; i < last; i++) {
+                float d = sqDistanceToSegment(p[i * 2], p[i * 2 + 1], p[first * 2], p[first * 2 + 1], p[last * 2], p[last * 2 + 1]);
+                if(d > maxSqDistance) {
+                    maxSqDistance = d;
+                    index = i;
+                }
+            }
+            if(maxSqDistance > sqTolerance) {
+                keep[index] = true;
+                sp = push(sp, first, index);
+                sp = push(sp, index, last);
+            }
+        }
+
+        for(int i = 1; i < count; i++) {
+            if(keep[i]) {
+                mOut.lineTo(p[i * 2], p[i * 2 + 1]);
+            }
+        }
+        startRun(p[(count - 1) * 2], p[(count - 1) * 2 + 1]);
+    }
+
+    private int push(int sp, int first, int last) {
+        if(sp + 2 > mStack.length) {
+            int[] stack = new int[mStack.length * 2];
+            System.arraycopy(mStack, 0, stack, 0, sp);
+            mStack = stack;
+        }
+        mStack[sp++] = first;
+        mStack[sp++] = last;
+        return sp;
+    }
+
+    private boolean isNear(float px, float py, float x0, float y0, float x1, float y1) {
+        return sqDistanceToSegment(px, py, x0, y0, x1, y1) <= mTolerance * mTolerance;
+    }
+
+    private static float sqDistanceToSegment(float px, float py, float x0, float y0, float x1, float y1) {
+        float dx = x1 - x0;
+        float dy = y1 - y0;
+        float l = dx * dx + dy * dy;
+        if(l > 0) {
+            float t = ((px - x0) * dx + (py - y0) * dy) / l;
+            if(t > 1) {
+                x0 = x1;
+                y0 = y1;
+            } else if(t > 0) {
+                x0 += dx * t;
+                y0 += dy * t;
+            }
+        }
+        dx = px - x0;
+        dy = py - y0;
+        return dx * dx + dy * dy;
+    }
+}
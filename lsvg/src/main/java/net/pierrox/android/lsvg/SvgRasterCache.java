@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import java.util.Arrays;
+
+/**
+ * Renderings of drawings shared between SvgDrawable instances, bounded by their size in bytes.
+ * A rendering is identified by the source of the drawing (asset, raw resource or file and its
+ * modification date), its size in pixels and the rendering options of the drawable, including its
+ * levels of detail. Drawables
+ * loaded from buffers or whose tree has been modified never use this cache.
+ * Cached bitmaps must not be modified.
+ */
+public class SvgRasterCache implements ComponentCallbacks2 {
+    private static SvgRasterCache sDefault;
+
+    private final LruCache<Key,Bitmap> mCache;
+
+    /**
+     * Return the process wide cache, using an eighth of the memory available to the application.
+     * It releases its content when the system asks to trim memory.
+     */
+    public static synchronized SvgRasterCache getDefault(Context context) {
+        if(sDefault == null) {
+            sDefault = new SvgRasterCache((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8));
+            context.getApplicationContext().registerComponentCallbacks(sDefault);
+        }
+        return sDefault;
+    }
+
+    /**
+     * @param maxBytes maximum size of the cached bitmaps in bytes
+     */
+    public SvgRasterCache(int maxBytes) {
+        mCache = new LruCache<Key,Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(Key key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+        };
+    }
+
+    /*package*/ Bitmap get(Key key) {
+        return mCache.get(key);
+    }
+
+    /*package*/ void put(Key key, Bitmap bitmap) {
+        mCache.put(key, bitmap);
+    }
+
+    public void clear() {
+        mCache.evictAll();
+    }
+
+    /**
+     * Return the size of the cached bitmaps in bytes.
+     */
+    public int size() {
+        return mCache.size();
+    }
+
+    public int maxSize() {
+        return mCache.maxSize();
+    }
+
+    public int hitCount() {
+        return mCache.hitCount();
+    }
+
+    public int missCount() {
+        return mCache.missCount();
+    }
+
+    public int evictionCount() {
+        return mCache.evictionCount();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if(level >= TRIM_MEMORY_MODERATE) {
+            mCache.evictAll();
+        } else if(level >= TRIM_MEMORY_BACKGROUND || level == TRIM_MEMORY_RUNNING_LOW || level == TRIM_MEMORY_RUNNING_CRITICAL) {
+            mCache.trimToSize(mCache.maxSize() / 2);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        mCache.evictAll();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // pass
+    }
+
+    /**
+     * Identity of a rendering. Drawables keep a mutable instance for lookups and store copies.
+     */
+    /*package*/ static final class Key {
+        String source;
+        int width;
+        int height;
+        boolean hasOverrideColor;
+        int overrideColor;
+        boolean emboss;
+        int embossColor;
+        // levels of detail of the drawable, or null, not modified once used in a key
+        float[] detailLevels;
+
+        Key copy() {
+            Key k = new Key();
+            k.source = source;
+            k.width = width;
+            k.height = height;
+            k.hasOverrideColor = hasOverrideColor;
+            k.overrideColor = overrideColor;
+            k.emboss = emboss;
+            k.embossColor = embossColor;
+            k.detailLevels = detailLevels;
+            return k;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return width == k.width && height == k.height
+                    && hasOverrideColor == k.hasOverrideColor && overrideColor == k.overrideColor
+                    && emboss == k.emboss && embossColor == k.embossColor
+                    && Arrays.equals(detailLevels, k.detailLevels)
+                    && source.equals(k.source);
+        }
+
+        @Override
+        public int hashCode() {
+            int h = source.hashCode();
+            h = h * 31 + width;
+            h = h * 31 + height;
+            h = h * 31 + (hasOverrideColor ? overrideColor : 0);
+            h = h * 31 + (emboss ? embossColor : 0);
+            h = h * 31 + Arrays.hashCode(detailLevels);
+            return h;
+        }
+    }
+}
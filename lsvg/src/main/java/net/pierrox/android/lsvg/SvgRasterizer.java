@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Render drawings into bitmaps on a pool of background threads, for instance to pre-render icons
+ * at several sizes. Each source is parsed once and rendered at every requested size by the same
+ * worker. Workers reuse their canvas and drawable from one source to the next.
+ */
+public class SvgRasterizer {
+    public interface Callback {
+        /**
+         * Called on the worker thread once a source has been rendered.
+         * @param bitmaps one bitmap per requested size, or null if the source could not be loaded
+         */
+        void onRasterized(Object source, Bitmap[] bitmaps);
+    }
+
+    private static final int KEEP_ALIVE_SECONDS = 10;
+
+    private final Context mContext;
+    private final ThreadPoolExecutor mExecutor;
+    private volatile float mPathSimplificationTolerance;
+    private final ThreadLocal<Worker> mWorkers = new ThreadLocal<Worker>() {
+        @Override
+        protected Worker initialValue() {
+            return new Worker();
+        }
+    };
+
+    /**
+     * @param threadCount maximum number of sources rendered concurrently, typically the number of cores
+     */
+    public SvgRasterizer(Context context, int threadCount) {
+        mContext = context.getApplicationContext();
+        mExecutor = new ThreadPoolExecutor(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new RasterizerThreadFactory());
+        mExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Simplify the paths of the sources submitted from now on, see SvgDrawable(Context, Object, float).
+     */
+    public void setPathSimplificationTolerance(float tolerance) {
+        mPathSimplificationTolerance = tolerance;
+    }
+
+    /**
+     * Render a source, which can be a File, an asset name or a raw resource id, in square bitmaps
+     * of the given sizes in pixels.
+     * @param callback optional, the result is available through the returned future too
+     */
+    public Future<Bitmap[]> rasterize(Object source, int[] sizes, Callback callback) {
+        return mExecutor.submit(new Job(source, sizes, callback));
+    }
+
+    /**
+     * Render a list of sources, see rasterize(Object, int[], Callback).
+     * @return one future per source, in the same order
+     */
+    public List<Future<Bitmap[]>> rasterize(List<?> sources, int[] sizes, Callback callback) {
+        ArrayList<Future<Bitmap[]>> futures = new ArrayList<>(sources.size());
+        for(Object source : sources) {
+            futures.add(rasterize(source, sizes, callback));
+        }
+        return futures;
+    }
+
+    /**
+     * Cancel pending jobs and stop the background threads. This rasterizer cannot be used anymore.
+     */
+    public void shutdown() {
+        mExecutor.shutdownNow();
+    }
+
+    private class Job implements Callable<Bitmap[]> {
+        private final Object mSource;
+        private final int[] mSizes;
+        private final Callback mCallback;
+        private final float mTolerance;
+
+        private Job(Object source, int[] sizes, Callback callback) {
+            mSource = source;
+            mSizes = sizes.clone();
+            mCallback = callback;
+            mTolerance = mPathSimplificationTolerance;
+        }
+
+        @Override
+        public Bitmap[] call() {
+            SvgSvg root = SvgDrawable.parse(mContext, mSource, mTolerance);
+            Bitmap[] bitmaps = root == null ? null : mWorkers.get().render(root, mSizes);
+            if(mCallback != null) {
+                mCallback.onRasterized(mSource, bitmaps);
+            }
+            return bitmaps;
+        }
+    }
+
+    /**
+     * Rendering state of a thread.
+     */
+    private static class Worker {
+        private final Canvas mCanvas = new Canvas();
+        private final SvgDrawable mDrawable = new SvgDrawable();
+
+        Bitmap[] render(SvgSvg root, int[] sizes) {
+            Bitmap[] bitmaps = new Bitmap[sizes.length];
+            mDrawable.setSvgRoot(root, null);
+            for(int i = 0; i < sizes.length; i++) {
+                int size = sizes[i];
+                Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+                mCanvas.setBitmap(bitmap);
+                mDrawable.setBounds(0, 0, size, size);
+                mDrawable.draw(mCanvas);
+                bitmaps[i] = bitmap;
+            }
+            mCanvas.setBitmap(null);
+            return bitmaps;
+        }
+    }
+
+    private static class RasterizerThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    // keep the UI thread responsive
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "SvgRasterizer #" + mCount.incrementAndGet());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+/**
+ * Sort keys packing a float value and an index in a long, so that arrays of keys can be sorted
+ * with Arrays.sort(long[]) without boxing: keys are ordered by value, then by index.
+ */
+final class SvgSortKeys {
+    private SvgSortKeys() {
+    }
+
+    /**
+     * @param index a non negative index, see getIndex()
+     */
+    static long make(float value, int index) {
+        return ((long) sortableBits(value) << 32) | index;
+    }
+
+    static int getIndex(long key) {
+        return (int) key;
+    }
+
+    // bits of a float, ordered as the float values when compared as ints
+    private static int sortableBits(float f) {
+        int bits = Float.floatToIntBits(f);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+}
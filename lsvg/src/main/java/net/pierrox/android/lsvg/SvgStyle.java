@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.graphics.Color;
+import android.graphics.DashPathEffect;
+import android.graphics.Paint;
+
+/**
+ * Decoded style of an element, as primitives, and the paints built from it.
+ * Interned instances are immutable: they and their paints are shared between elements with the
+ * same style, see SvgPath for copy on write. A mutable instance is used as scratch while parsing
+ * and as the lookup key of the intern caches.
+ */
+final class SvgStyle {
+    boolean isVisible;
+
+    boolean hasFill;
+    int fillColor;
+    int fillAlpha;
+    SvgGradient fillGradient;
+    // fill-rule: evenodd or nonzero
+    boolean fillEvenOdd;
+
+    boolean hasStroke;
+    int strokeColor;
+    int strokeAlpha;
+    SvgGradient strokeGradient;
+    float strokeWidth;
+    Paint.Cap strokeCap;
+    Paint.Join strokeJoin;
+    float strokeMiter;
+    // null when there is no dash, may be larger than strokeDashCount in the scratch instance
+    float[] strokeDashArray;
+    int strokeDashCount;
+    float strokeDashOffset;
+
+    // built once when interned
+    Paint fillPaint;
+    Paint strokePaint;
+
+    SvgStyle() {
+        reset();
+    }
+
+    void reset() {
+        isVisible = true;
+        hasFill = true;
+        fillColor = Color.BLACK;
+        fillAlpha = 255;
+        fillGradient = null;
+        fillEvenOdd = false;
+        hasStroke = false;
+        strokeColor = Color.BLACK;
+        strokeAlpha = 255;
+        strokeGradient = null;
+        strokeWidth = 1;
+        strokeCap = Paint.Cap.BUTT;
+        strokeJoin = Paint.Join.MITER;
+        strokeMiter = 4;
+        strokeDashCount = 0;
+        strokeDashOffset = 0;
+    }
+
+    boolean refersToGradient() {
+        return (hasFill && fillGradient != null) || (hasStroke && strokeGradient != null);
+    }
+
+    /**
+     * Copy this scratch style into a new immutable instance, and build its paints.
+     */
+    SvgStyle intern() {
+        SvgStyle s = new SvgStyle();
+        s.isVisible = isVisible;
+        s.hasFill = hasFill;
+        s.fillColor = fillColor;
+        s.fillAlpha = fillAlpha;
+        s.fillGradient = fillGradient;
+        s.fillEvenOdd = fillEvenOdd;
+        s.hasStroke = hasStroke;
+        s.strokeColor = strokeColor;
+        s.strokeAlpha = strokeAlpha;
+        s.strokeGradient = strokeGradient;
+        s.strokeWidth = strokeWidth;
+        s.strokeCap = strokeCap;
+        s.strokeJoin = strokeJoin;
+        s.strokeMiter = strokeMiter;
+        if(strokeDashCount > 0) {
+            s.strokeDashArray = new float[strokeDashCount];
+            System.arraycopy(strokeDashArray, 0, s.strokeDashArray, 0, strokeDashCount);
+            s.strokeDashCount = strokeDashCount;
+            s.strokeDashOffset = strokeDashOffset;
+        }
+
+        if(hasFill) {
+            Paint fp = fillGradient == null ? new Paint(Paint.ANTI_ALIAS_FLAG) : new Paint(fillGradient.getPaint());
+            fp.setStyle(Paint.Style.FILL);
+            fp.setColor(fillColor);
+            fp.setAlpha(fillAlpha);
+            s.fillPaint = fp;
+        }
+
+        if(hasStroke) {
+            Paint sp = strokeGradient == null ? new Paint(Paint.ANTI_ALIAS_FLAG) : new Paint(strokeGradient.getPaint());
+            sp.setStyle(Paint.Style.STROKE);
+            sp.setColor(strokeColor);
+            sp.setAlpha(strokeAlpha);
+            sp.setStrokeWidth(strokeWidth);
+            sp.setStrokeCap(strokeCap);
+            sp.setStrokeJoin(strokeJoin);
+            sp.setStrokeMiter(strokeMiter);
+            if(s.strokeDashArray != null) {
+                sp.setPathEffect(new DashPathEffect(s.strokeDashArray, strokeDashOffset));
+            }
+            s.strokePaint = sp;
+        }
+
+        return s;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) return true;
+        if(!(o instanceof SvgStyle)) return false;
+        SvgStyle s = (SvgStyle) o;
+        if(isVisible != s.isVisible || hasFill != s.hasFill || hasStroke != s.hasStroke) {
+            return false;
+        }
+        if(hasFill && (fillColor != s.fillColor || fillAlpha != s.fillAlpha || fillGradient != s.fillGradient
+                || fillEvenOdd != s.fillEvenOdd)) {
+            return false;
+        }
+        if(hasStroke) {
+            if(strokeColor != s.strokeColor || strokeAlpha != s.strokeAlpha || strokeGradient != s.strokeGradient
+                    || strokeWidth != s.strokeWidth || strokeCap != s.strokeCap || strokeJoin != s.strokeJoin
+                    || strokeMiter != s.strokeMiter || strokeDashCount != s.strokeDashCount) {
+                return false;
+            }
+            if(strokeDashCount > 0) {
+                if(strokeDashOffset != s.strokeDashOffset) return false;
+                for(int i = 0; i < strokeDashCount; i++) {
+                    if(strokeDashArray[i] != s.strokeDashArray[i]) return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int h = isVisible ? 1 : 0;
+        if(hasFill) {
+            h = h * 31 + fillColor;
+            h = h * 31 + fillAlpha;
+            h = h * 31 + System.identityHashCode(fillGradient);
+            h = h * 31 + (fillEvenOdd ? 1 : 0);
+        }
+        if(hasStroke) {
+            h = h * 31 + strokeColor;
+            h = h * 31 + strokeAlpha;
+            h = h * 31 + System.identityHashCode(strokeGradient);
+            h = h * 31 + Float.floatToIntBits(strokeWidth);
+            h = h * 31 + strokeCap.ordinal();
+            h = h * 31 + strokeJoin.ordinal();
+            h = h * 31 + strokeDashCount;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+
+/**
+ * Single pass scanner for style declarations and presentation attributes. Values are decoded in
+ * place into a scratch SvgStyle, without intermediate strings (except for gradient references).
+ * An instance is bound to a document and is not thread safe.
+ */
+final class SvgStyleParser {
+    static final int PROPERTY_FILL = 0;
+    static final int PROPERTY_STROKE = 1;
+    static final int PROPERTY_STROKE_WIDTH = 2;
+    static final int PROPERTY_STROKE_LINECAP = 3;
+    static final int PROPERTY_STROKE_LINEJOIN = 4;
+    static final int PROPERTY_STROKE_MITERLIMIT = 5;
+    static final int PROPERTY_STROKE_DASHARRAY = 6;
+    static final int PROPERTY_STROKE_DASHOFFSET = 7;
+    static final int PROPERTY_STROKE_OPACITY = 8;
+    static final int PROPERTY_FILL_OPACITY = 9;
+    static final int PROPERTY_DISPLAY = 10;
+    static final int PROPERTY_STOP_COLOR = 11;
+    static final int PROPERTY_STOP_OPACITY = 12;
+    static final int PROPERTY_FILL_RULE = 13;
+
+    // indexed by the PROPERTY_* constants, see also findAttribute()
+    static final String[] PROPERTY_NAMES = {
+            "fill",
+            "stroke",
+            "stroke-width",
+            "stroke-linecap",
+            "stroke-linejoin",
+            "stroke-miterlimit",
+            "stroke-dasharray",
+            "stroke-dashoffset",
+            "stroke-opacity",
+            "fill-opacity",
+            "display",
+            "stop-color",
+            "stop-opacity",
+            "fill-rule",
+    };
+
+    // same names and values as android.graphics.Color.parseColor
+    private static final String[] COLOR_NAMES = {
+            "black", "darkgray", "gray", "lightgray", "white", "red", "green", "blue", "yellow", "cyan", "magenta",
+            "aqua", "fuchsia", "darkgrey", "grey", "lightgrey", "lime", "maroon", "navy", "olive", "purple", "silver", "teal",
+    };
+    private static final int[] COLOR_VALUES = {
+            0xff000000, 0xff444444, 0xff888888, 0xffcccccc, 0xffffffff, 0xffff0000, 0xff00ff00, 0xff0000ff, 0xffffff00, 0xff00ffff, 0xffff00ff,
+            0xff00ffff, 0xffff00ff, 0xff444444, 0xff888888, 0xffcccccc, 0xff00ff00, 0xff800000, 0xff000080, 0xff808000, 0xff800080, 0xffc0c0c0, 0xff008080,
+    };
+
+    private final SvgSvg mRoot;
+    private final SvgStyle mStyle = new SvgStyle();
+    private final SvgParserHelper mNumberParser = new SvgParserHelper();
+
+    // result of the last parseColor / parseGradient call
+    private int mColor;
+    private SvgGradient mGradient;
+
+    int stopColor;
+    float stopOpacity;
+
+    SvgStyleParser(SvgSvg root) {
+        mRoot = root;
+        mStyle.strokeDashArray = new float[8];
+    }
+
+    /**
+     * Start a new element: reset the scratch style and stop values to their defaults.
+     */
+    SvgStyle begin() {
+        mStyle.reset();
+        stopColor = Color.BLACK;
+        stopOpacity = 1;
+        return mStyle;
+    }
+
+    SvgStyle getStyle() {
+        return mStyle;
+    }
+
+    /**
+     * Parse a list of declarations, such as "fill:#ff0000;stroke:none".
+     */
+    void parseDeclarations(String s) {
+        if(s == null) {
+            return;
+        }
+        int n = s.length();
+        int start = 0;
+        while(start < n) {
+            int end = s.indexOf(';', start);
+            if(end == -1) {
+                end = n;
+            }
+            int colon = s.indexOf(':', start);
+            if(colon != -1 && colon < end) {
+                int ns = skipSpaces(s, start, colon);
+                int ne = trimSpaces(s, ns, colon);
+                int property = findProperty(s, ns, ne);
+                if(property != -1) {
+                    int vs = skipSpaces(s, colon + 1, end);
+                    parseValue(property, s, vs, trimSpaces(s, vs, end));
+                }
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Parse the value of a presentation attribute.
+     */
+    void parseAttribute(int property, String value) {
+        int n = value.length();
+        int start = skipSpaces(value, 0, n);
+        parseValue(property, value, start, trimSpaces(value, start, n));
+    }
+
+    /**
+     * Parse a number followed by an optional unit or percent sign, return NaN if there is none.
+     */
+    float parseNumber(String s, int start, int end) {
+        mNumberParser.reset(s, start, end);
+        mNumberParser.skipWhitespace();
+        float f = mNumberParser.parseFloat();
+        if(mNumberParser.pos < end && s.charAt(mNumberParser.pos) == '%') {
+            f /= 100;
+        }
+        return f;
+    }
+
+    private void parseValue(int property, String s, int start, int end) {
+        SvgStyle style = mStyle;
+        float f;
+        try {
+            switch(property) {
+                case PROPERTY_FILL:
+                    if(matches(s, start, end, "none")) {
+                        style.hasFill = false;
+                    } else if(parseGradient(s, start, end)) {
+                        style.hasFill = mGradient != null;
+                        style.fillGradient = mGradient;
+                    } else if(parseColor(s, start, end)) {
+                        style.fillColor = mColor;
+                        style.fillGradient = null;
+                        style.hasFill = mColor != 0;
+                    }
+                    break;
+
+                case PROPERTY_STROKE:
+                    if(matches(s, start, end, "none")) {
+                        style.hasStroke = false;
+                    } else if(parseGradient(s, start, end)) {
+                        style.hasStroke = mGradient != null;
+                        style.strokeGradient = mGradient;
+                    } else if(parseColor(s, start, end)) {
+                        style.strokeColor = mColor;
+                        style.strokeGradient = null;
+                        style.hasStroke = mColor != 0;
+                    }
+                    break;
+
+                case PROPERTY_STROKE_WIDTH:
+                    f = parseNumber(s, start, end);
+                    if(!Float.isNaN(f)) style.strokeWidth = f;
+                    break;
+
+                case PROPERTY_STROKE_LINECAP:
+                    if(matches(s, start, end, "round")) {
+                        style.strokeCap = Paint.Cap.ROUND;
+                    } else if(matches(s, start, end, "butt")) {
+                        style.strokeCap = Paint.Cap.BUTT;
+                    } else if(matches(s, start, end, "square")) {
+                        style.strokeCap = Paint.Cap.SQUARE;
+                    }
+                    break;
+
+                case PROPERTY_STROKE_LINEJOIN:
+                    if(matches(s, start, end, "miter")) {
+                        style.strokeJoin = Paint.Join.MITER;
+                    } else if(matches(s, start, end, "round")) {
+                        style.strokeJoin = Paint.Join.ROUND;
+                    } else if(matches(s, start, end, "bevel")) {
+                        style.strokeJoin = Paint.Join.BEVEL;
+                    }
+                    break;
+
+                case PROPERTY_STROKE_MITERLIMIT:
+                    f = parseNumber(s, start, end);
+                    if(!Float.isNaN(f)) style.strokeMiter = f;
+                    break;
+
+                case PROPERTY_STROKE_DASHARRAY:
+                    parseDashArray(s, start, end);
+                    break;
+
+                case PROPERTY_STROKE_DASHOFFSET:
+                    f = parseNumber(s, start, end);
+                    if(!Float.isNaN(f)) style.strokeDashOffset = f;
+                    break;
+
+                case PROPERTY_STROKE_OPACITY:
+                    f = parseNumber(s, start, end);
+                    if(!Float.isNaN(f)) style.strokeAlpha = (int) (255 * f);
+                    break;
+
+                case PROPERTY_FILL_OPACITY:
+                    f = parseNumber(s, start, end);
+                    if(!Float.isNaN(f)) style.fillAlpha = (int) (255 * f);
+                    break;
+
+                case PROPERTY_DISPLAY:
+                    style.isVisible = !matches(s, start, end, "none");
+                    break;
+
+                case PROPERTY_STOP_COLOR:
+                    if(parseColor(s, start, end)) stopColor = mColor;
+                    break;
+
+                case PROPERTY_STOP_OPACITY:
+                    f = parseNumber(s, start, end);
+                    if(!Float.isNaN(f)) stopOpacity = f;
+                    break;
+
+                case PROPERTY_FILL_RULE:
+                    if(matches(s, start, end, "evenodd")) {
+                        style.fillEvenOdd = true;
+                    } else if(matches(s, start, end, "nonzero")) {
+                        style.fillEvenOdd = false;
+                    }
+                    break;
+            }
+        } catch (RuntimeException e) {
+            // malformed number, ignore the declaration
+        }
+    }
+
+    private void parseDashArray(String s, int start, int end) {
+        SvgStyle style = mStyle;
+        style.strokeDashCount = 0;
+        if(matches(s, start, end, "none")) {
+            return;
+        }
+        SvgParserHelper ph = mNumberParser;
+        ph.reset(s, start, end);
+        ph.skipWhitespace();
+        while(ph.pos < end) {
+            float f = ph.parseFloat();
+            if(Float.isNaN(f)) {
+                break;
+            }
+            addDash(f);
+            ph.skipNumberSeparator();
+        }
+        // an odd number of values is repeated to yield an even number of values
+        int count = style.strokeDashCount;
+        if(count % 2 == 1) {
+            for(int i = 0; i < count; i++) {
+                addDash(style.strokeDashArray[i]);
+            }
+        }
+    }
+
+    private void addDash(float f) {
+        SvgStyle style = mStyle;
+        float[] a = style.strokeDashArray;
+        if(style.strokeDashCount == a.length) {
+            float[] larger = new float[a.length * 2];
+            System.arraycopy(a, 0, larger, 0, a.length);
+            style.strokeDashArray = a = larger;
+        }
+        a[style.strokeDashCount++] = f;
+    }
+
+    /**
+     * Parse "url(#id)": return true if this is a reference, and set mGradient, which is null if
+     * the reference cannot be resolved.
+     */
+    private boolean parseGradient(String s, int start, int end) {
+        if(!s.regionMatches(start, "url(", 0, 4)) {
+            return false;
+        }
+        int a = s.indexOf('#', start);
+        int b = s.lastIndexOf(')', end - 1);
+        mGradient = null;
+        if(a != -1 && b > a && b < end) {
+            SvgElement e = mRoot.getElementsById().get(s.substring(a + 1, b));
+            if(e instanceof SvgGradient && ((SvgGradient) e).getPaint() != null) {
+                // TODO make the link with element using this gradient so that updates to the gradient can be taken into account. See Gradient.addUser()
+                mGradient = (SvgGradient) e;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse #rgb, #rrggbb, #aarrggbb, rgb(r, g, b) or a color name, and set mColor.
+     * Return false if the color is not valid.
+     */
+    boolean parseColor(String s, int start, int end) {
+        int length = end - start;
+        if(length < 2) {
+            return false;
+        }
+
+        if(s.charAt(start) == '#') {
+            int value = 0;
+            for(int i = start + 1; i < end; i++) {
+                int d = Character.digit(s.charAt(i), 16);
+                if(d == -1) {
+                    return false;
+                }
+                value = (value << 4) | d;
+            }
+            switch(length) {
+                case 4:
+                    int r = (value >> 8) & 0xf, g = (value >> 4) & 0xf, b = value & 0xf;
+                    mColor = 0xff000000 | (r << 20) | (r << 16) | (g << 12) | (g << 8) | (b << 4) | b;
+                    return true;
+                case 7:
+                    mColor = 0xff000000 | value;
+                    return true;
+                case 9:
+                    mColor = value;
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        if(s.regionMatches(true, start, "rgb(", 0, 4)) {
+            SvgParserHelper ph = mNumberParser;
+            ph.reset(s, start + 4, end);
+            int color = 0xff000000;
+            for(int shift = 16; shift >= 0; shift -= 8) {
+                ph.skipWhitespace();
+                float f = ph.parseFloat();
+                if(Float.isNaN(f)) {
+                    return false;
+                }
+                if(ph.pos < end && s.charAt(ph.pos) == '%') {
+                    f = f * 255 / 100;
+                    ph.advance();
+                }
+                int c = Math.max(0, Math.min(255, Math.round(f)));
+                color |= c << shift;
+                ph.skipNumberSeparator();
+            }
+            mColor = color;
+            return true;
+        }
+
+        for(int i = 0; i < COLOR_NAMES.length; i++) {
+            String name = COLOR_NAMES[i];
+            if(name.length() == length && s.regionMatches(true, start, name, 0, length)) {
+                mColor = COLOR_VALUES[i];
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the PROPERTY_* constant of a presentation attribute, or -1 for other attributes
+     */
+    static int findAttribute(String name) {
+        switch(name) {
+            case "fill": return PROPERTY_FILL;
+            case "stroke": return PROPERTY_STROKE;
+            case "stroke-width": return PROPERTY_STROKE_WIDTH;
+            case "stroke-linecap": return PROPERTY_STROKE_LINECAP;
+            case "stroke-linejoin": return PROPERTY_STROKE_LINEJOIN;
+            case "stroke-miterlimit": return PROPERTY_STROKE_MITERLIMIT;
+            case "stroke-dasharray": return PROPERTY_STROKE_DASHARRAY;
+            case "stroke-dashoffset": return PROPERTY_STROKE_DASHOFFSET;
+            case "stroke-opacity": return PROPERTY_STROKE_OPACITY;
+            case "fill-opacity": return PROPERTY_FILL_OPACITY;
+            case "display": return PROPERTY_DISPLAY;
+            case "stop-color": return PROPERTY_STOP_COLOR;
+            case "stop-opacity": return PROPERTY_STOP_OPACITY;
+            case "fill-rule": return PROPERTY_FILL_RULE;
+            default: return -1;
+        }
+    }
+
+    private static int findProperty(String s, int start, int end) {
+        for(int i = 0; i < PROPERTY_NAMES.length; i++) {
+            if(matches(s, start, end, PROPERTY_NAMES[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean matches(String s, int start, int end, String value) {
+        int length = value.length();
+        return end - start == length && s.regionMatches(start, value, 0, length);
+    }
+
+    private static int skipSpaces(String s, int start, int end) {
+        while(start < end && Character.isWhitespace(s.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimSpaces(String s, int start, int end) {
+        while(end > start && Character.isWhitespace(s.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+}
@@ -15,40 +15,99 @@
  */
 package net.pierrox.android.lsvg;
 
-import android.graphics.Color;
-import android.graphics.DashPathEffect;
 import android.graphics.Matrix;
-import android.graphics.Paint;
-import android.graphics.Path;
 import android.graphics.RectF;
 import android.graphics.Shader;
 import android.graphics.drawable.Drawable;
+import android.util.Xml;
 
-import org.xml.sax.Attributes;
-import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
-import org.xml.sax.XMLReader;
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Stack;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-
 public class SvgSvg extends SvgGroup {
     private Drawable mHolderDrawable;
     public float width;
     public float height;
     private HashMap<String,SvgElement> mElementsById;
+    // parsed styles are shared between elements with the same style, see SvgPath for copy on write
+    private HashMap<SvgStyle,SvgStyle> mStyleCache;
+    private SvgStyleParser mStyleParser;
+    private SvgTransformParser mTransformParser;
+    private int mModificationCount;
+    private int mStructureVersion;
+    // area modified since the last rendering, in document coordinates
+    private final RectF mDirtyRect = new RectF();
+    private boolean mFullyDirty = true;
+    /*package*/ final RectF mTmpDirtyRect = new RectF();
+    /*package*/ final Matrix mTmpMatrix = new Matrix();
+
+    private final float mPathSimplificationTolerance;
+    private SvgPathSimplifier mPathSimplifier;
+    private int mRemovedSegmentCount;
+
+    private static final int PROCESS_WIDE_STYLE_CACHE_SIZE = 256;
+    private static boolean sProcessWideStyleCacheEnabled;
+    private static final LinkedHashMap<SvgStyle,SvgStyle> sProcessWideStyleCache = new LinkedHashMap<SvgStyle,SvgStyle>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<SvgStyle,SvgStyle> eldest) {
+            return size() > PROCESS_WIDE_STYLE_CACHE_SIZE;
+        }
+    };
 
     SvgSvg() {
+        this(0);
+    }
+
+    /**
+     * @param pathSimplificationTolerance see getPathSimplificationTolerance()
+     */
+    SvgSvg(float pathSimplificationTolerance) {
         super(null, null, true, null);
+        this.mPathSimplificationTolerance = pathSimplificationTolerance;
         this.width = 1;
         this.height = 1;
         this.mElementsById = new HashMap<>();
+        this.mStyleCache = new HashMap<>();
+        this.mStyleParser = new SvgStyleParser(this);
+        this.mTransformParser = new SvgTransformParser();
+    }
+
+    /**
+     * Share parsed styles between documents too, not only within a document. Styles referring to
+     * gradients are specific to their document and are never shared.
+     */
+    public static void setProcessWideStyleCacheEnabled(boolean enabled) {
+        synchronized (sProcessWideStyleCache) {
+            sProcessWideStyleCacheEnabled = enabled;
+            if(!enabled) {
+                sProcessWideStyleCache.clear();
+            }
+        }
+    }
+
+    /**
+     * Return the distance in document units within which paths were simplified when parsing this
+     * document, or 0 if they were kept as they are, see SvgPathSimplifier. The tolerance is chosen
+     * when loading the drawable, see SvgDrawable(Context, Object, float).
+     */
+    public float getPathSimplificationTolerance() {
+        return mPathSimplificationTolerance;
+    }
+
+    /**
+     * Return the number of path segments removed by simplification when parsing this document.
+     */
+    public int getRemovedSegmentCount() {
+        return mRemovedSegmentCount;
     }
 
     public void setHolderDrawable(Drawable holderDrawable) {
@@ -59,61 +118,201 @@ public class SvgSvg extends SvgGroup {
         return mElementsById.get(id);
     }
 
+    /*package*/ HashMap<String,SvgElement> getElementsById() {
+        return mElementsById;
+    }
+
+    /**
+     * Release the native paths of the whole tree, for instance when the drawing is offscreen or
+     * under memory pressure. Paths are rebuilt from their primitive description when needed.
+     */
+    public void releasePaths() {
+        releasePaths(this);
+    }
+
+    private static void releasePaths(SvgGroup group) {
+        for(SvgElement e : group.getChildren()) {
+            if(e instanceof SvgGroup) {
+                releasePaths((SvgGroup) e);
+            } else if(e instanceof SvgPath) {
+                ((SvgPath) e).releasePath();
+            }
+        }
+    }
+
+    /**
+     * Return a counter incremented each time the tree is modified, used to know when renderings
+     * of the tree are stale.
+     */
+    /*package*/ int getModificationCount() {
+        return mModificationCount;
+    }
+
+    /**
+     * Return a counter incremented each time elements are added, removed, shown, hidden or
+     * transformed, see SvgDisplayList.
+     */
+    /*package*/ int getStructureVersion() {
+        return mStructureVersion;
+    }
+
+    /*package*/ void onStructureChanged() {
+        mStructureVersion++;
+    }
+
+    @Override
+    /*package*/ void invalidateStructure() {
+        invalidate();
+    }
+
+    /**
+     * Compute the bounds of all elements, so that later modifications can be tracked precisely.
+     */
+    /*package*/ void updateBounds() {
+        mTmpMatrix.reset();
+        updateBounds(mTmpMatrix);
+    }
+
+    /**
+     * Return the area modified since the last call in out, and reset it. Return false if the
+     * whole document must be considered as modified.
+     */
+    /*package*/ boolean consumeDirtyRect(RectF out) {
+        boolean partial = !mFullyDirty;
+        out.set(mDirtyRect);
+        mDirtyRect.setEmpty();
+        mFullyDirty = false;
+        return partial;
+    }
+
+    /*package*/ void invalidate(RectF dirty) {
+        mDirtyRect.union(dirty);
+        notifyModified();
+    }
+
+    /**
+     * Notify that the whole document must be redrawn, without structural change: the display
+     * list is kept.
+     */
+    /*package*/ void invalidateContent() {
+        mFullyDirty = true;
+        mBoundsValid = false;
+        notifyModified();
+    }
+
+    /**
+     * Notify that the whole document has been modified, for instance after a structural change.
+     */
     @Override
     public void invalidate() {
+        mStructureVersion++;
+        invalidateGroupLocalBounds();
+        invalidateContent();
+    }
+
+    private void notifyModified() {
+        mModificationCount++;
         if(mHolderDrawable != null) {
             mHolderDrawable.invalidateSelf();
         }
     }
 
-    public void parse(InputStream is) throws IOException {
-        SAXParserFactory spf = SAXParserFactory.newInstance();
-        SAXParser sp;
-        SvgHandler svg_handler;
+    // pull parsers are cheap to reset but not to create: keep one per thread and reuse it for every document.
+    // A parser is taken out of its slot while in use so that a nested parse on the same thread gets its own.
+    private static final ThreadLocal<XmlPullParser> sPullParser = new ThreadLocal<>();
+
+    private static XmlPullParser obtainPullParser() throws XmlPullParserException {
+        XmlPullParser parser = sPullParser.get();
+        if(parser == null) {
+            parser = Xml.newPullParser();
+            parser.setFeature(XmlPullParser.FEATURE_PROCESS_NAMESPACES, false);
+        } else {
+            sPullParser.set(null);
+        }
+        return parser;
+    }
+
+    private static void recyclePullParser(XmlPullParser parser) {
+        // do not keep a reference on the stream
+        try { parser.setInput((Reader) null); } catch (XmlPullParserException e) { return; }
+        sPullParser.set(parser);
+    }
+
+    /**
+     * Parse a document from the remaining bytes of a buffer, for instance a mapped file. The bytes
+     * are read in place, the buffer position is left unchanged.
+     */
+    public void parse(ByteBuffer buffer) throws IOException {
+        parse(new SvgByteBufferInputStream(buffer));
+    }
+
+    /**
+     * Parse a document into this tree. Parsing only uses state owned by this document or by the
+     * calling thread, hence distinct documents can be parsed concurrently.
+     */
+    public synchronized void parse(InputStream is) throws IOException {
+        XmlPullParser parser = null;
         try {
-            sp = spf.newSAXParser();
-            XMLReader xr = sp.getXMLReader();
-            svg_handler=new SvgHandler();
-            xr.setContentHandler(svg_handler);
-            xr.parse(new InputSource(is));
-        } catch (ParserConfigurationException | SAXException | IOException e1) {
+            parser = obtainPullParser();
+            parser.setInput(is, null);
+            SvgHandler svg_handler = new SvgHandler(parser);
+            int eventType = parser.getEventType();
+            while(eventType != XmlPullParser.END_DOCUMENT) {
+                if(eventType == XmlPullParser.START_TAG) {
+                    svg_handler.startElement(getLocalName(parser.getName()));
+                } else if(eventType == XmlPullParser.END_TAG) {
+                    svg_handler.endElement(getLocalName(parser.getName()));
+                }
+                eventType = parser.next();
+            }
+        } catch (XmlPullParserException e1) {
             throw new IOException(e1.getMessage());
+        } finally {
+            if(parser != null) {
+                recyclePullParser(parser);
+            }
         }
     }
 
-    private class SvgHandler extends org.xml.sax.helpers.DefaultHandler {
+    // namespace processing is disabled for speed, hence strip prefixes such as in "svg:path"
+    private static String getLocalName(String name) {
+        int n = name.indexOf(':');
+        return n == -1 ? name : name.substring(n + 1);
+    }
+
+    private class SvgHandler {
+        private XmlPullParser atts;
         private Stack<SvgGroup> mCurrentGroup;
         private SvgGradient mCurrentGradient;
         private RectF mTmpRectF = new RectF();
 
-        public SvgHandler() {
+        public SvgHandler(XmlPullParser parser) {
+            atts = parser;
             mCurrentGroup = new Stack<>();
         }
 
-        @Override
-        public void startElement(String namespaceURI, String localName, String qName, Attributes atts) throws SAXException {
+        public void startElement(String localName) {
             SvgElement e = null;
             if(localName.equals("svg")) {
                 float width;
                 float height;
-                String viewBox = atts.getValue("viewBox");
+                String viewBox = getValue(atts, "viewBox");
                 if(viewBox != null) {
                     String[] tokens = viewBox.split(" ");
                     width = Float.parseFloat(tokens[2]);
                     height = Float.parseFloat(tokens[3]);
                 } else {
-                    width = Float.parseFloat(atts.getValue("width"));
-                    height = Float.parseFloat(atts.getValue("height"));
+                    width = Float.parseFloat(getValue(atts, "width"));
+                    height = Float.parseFloat(getValue(atts, "height"));
                 }
                 SvgSvg.this.width = width;
                 SvgSvg.this.height = height;
                 mCurrentGroup.push(SvgSvg.this);
                 e = SvgSvg.this;
             } else if(localName.equals("g")) {
-                Matrix t = parseTransform(atts.getValue("transform"));
-                String style = atts.getValue("style");
+                Matrix t = parseTransform(getValue(atts, "transform"));
                 try {
-                    SvgSvg.ParsedStyle parsedStyle = parseStyle(style);
+                    SvgStyle parsedStyle = parseStyle(atts);
                     SvgGroup group = new SvgGroup(SvgSvg.this, getCurrentGroup(), parsedStyle.isVisible, t);
                     addElement(group);
                     mCurrentGroup.push(group);
@@ -122,13 +321,18 @@ public class SvgSvg extends SvgGroup {
                     r.printStackTrace();
                 }
             } else if(localName.equals("path")) {
-                String d = atts.getValue("d");
-                String style = composeStyle(atts);
-                String transform = atts.getValue("transform");
+                String d = getValue(atts, "d");
+                String transform = getValue(atts, "transform");
                 Matrix t = parseTransform(transform);
-                ParsedStyle parsedStyle = parseStyle(style);
-                Path path = parsePath(d);
-                SvgPath svgPath = new SvgPath(SvgSvg.this, getCurrentGroup(), parsedStyle.isVisible, t, path, parsedStyle.fillPaint, parsedStyle.strokePaint);
+                SvgStyle parsedStyle = parseStyle(atts);
+                SvgPathData path = parsePath(d);
+                if(mPathSimplificationTolerance > 0) {
+                    if(mPathSimplifier == null) {
+                        mPathSimplifier = new SvgPathSimplifier();
+                    }
+                    mRemovedSegmentCount += mPathSimplifier.simplify(path, mPathSimplificationTolerance);
+                }
+                SvgPath svgPath = new SvgPath(SvgSvg.this, getCurrentGroup(), t, path, parsedStyle);
                 addElement(svgPath);
                 e = svgPath;
             } else if(localName.equals("rect")) {
@@ -139,16 +343,17 @@ public class SvgSvg extends SvgGroup {
                 float rx = parseFloat(atts, "rx", 0);
                 float ry = parseFloat(atts, "ry", 0);
 
-                Path p = new Path();
-                p.addRoundRect(new RectF(x, y, x + width, y + height), rx, ry, Path.Direction.CW);
+                SvgPathData p = new SvgPathData();
+                mTmpRectF.set(x, y, x + width, y + height);
+                p.addRoundRect(mTmpRectF, rx, ry);
+                p.trim();
 
-                String style = composeStyle(atts);
-                ParsedStyle parsedStyle = parseStyle(style);
+                SvgStyle parsedStyle = parseStyle(atts);
 
-                String transform = atts.getValue("transform");
+                String transform = getValue(atts, "transform");
                 Matrix matrix = parseTransform(transform);
 
-                SvgPath path = new SvgPath(SvgSvg.this, getCurrentGroup(), parsedStyle.isVisible, matrix, p, parsedStyle.fillPaint, parsedStyle.strokePaint);
+                SvgPath path = new SvgPath(SvgSvg.this, getCurrentGroup(), matrix, p, parsedStyle);
                 addElement(path);
                 e = path;
             } else if(localName.equals("ellipse") || localName.equals("circle")) {
@@ -164,16 +369,16 @@ public class SvgSvg extends SvgGroup {
                 }
                 mTmpRectF.set(centerX - radiusX, centerY - radiusY, centerX + radiusX, centerY + radiusY);
 
-                Path p = new Path();
-                p.addOval(mTmpRectF, Path.Direction.CW);
+                SvgPathData p = new SvgPathData();
+                p.addOval(mTmpRectF);
+                p.trim();
 
-                String style = composeStyle(atts);
-                ParsedStyle parsedStyle = parseStyle(style);
+                SvgStyle parsedStyle = parseStyle(atts);
 
-                String transform = atts.getValue("transform");
+                String transform = getValue(atts, "transform");
                 Matrix matrix = parseTransform(transform);
 
-                SvgPath path = new SvgPath(SvgSvg.this, getCurrentGroup(), parsedStyle.isVisible, matrix, p, parsedStyle.fillPaint, parsedStyle.strokePaint);
+                SvgPath path = new SvgPath(SvgSvg.this, getCurrentGroup(), matrix, p, parsedStyle);
                 addElement(path);
                 e = path;
             } else if(localName.equals("linearGradient")) {
@@ -194,29 +399,20 @@ public class SvgSvg extends SvgGroup {
                 mCurrentGradient = g;
                 e = g;
             } else if(localName.equals("stop")) {
-                float offset = Float.parseFloat(atts.getValue("offset"));
-                String style = atts.getValue("style");
-                int color = Color.BLACK;
-                int alpha = 255;
-                for(String token : style.split(";")) {
-                    String[] elems = token.split(":");
-                    String name = elems[0];
-                    String value = elems[1];
-                    if("stop-color".equals(name)) {
-                        color = Color.parseColor(value);
-                    } else if("stop-opacity".equals(name)) {
-                        alpha = Math.round(Float.parseFloat(value) * 255);
-                    }
-                }
-
-                color = Color.argb(alpha, Color.red(color), Color.green(color), Color.blue(color));
+                SvgStyleParser sp = mStyleParser;
+                String offsetValue = getValue(atts, "offset");
+                float offset = offsetValue == null ? 0 : sp.parseNumber(offsetValue, 0, offsetValue.length());
+                sp.begin();
+                parseStyleAttributes(atts);
+                int alpha = Math.round(sp.stopOpacity * 255);
+                int color = (sp.stopColor & 0xffffff) | (alpha << 24);
 
                 mCurrentGradient.addStopOffset(offset);
                 mCurrentGradient.addStopColors(color);
             }
 
             if(e != null) {
-                String id = atts.getValue("id");
+                String id = getValue(atts, "id");
                 if(id != null) {
                     e.setId(id);
                     mElementsById.put(id, e);
@@ -224,8 +420,7 @@ public class SvgSvg extends SvgGroup {
             }
         }
 
-        @Override
-        public void endElement(String uri, String localName, String qName) throws SAXException {
+        public void endElement(String localName) {
             if(localName.equals("g")) {
                 mCurrentGroup.pop();
             } else if(localName.equals("defs")) {
@@ -253,24 +448,12 @@ public class SvgSvg extends SvgGroup {
         }
     }
 
-    /*package*/ static class ParsedStyle {
-        Paint strokePaint;
-        Paint fillPaint;
-        boolean isVisible;
-
-        public ParsedStyle(Paint strokePaint, Paint fillPaint, boolean isVisible) {
-            this.strokePaint = strokePaint;
-            this.fillPaint = fillPaint;
-            this.isVisible = isVisible;
-        }
-    }
-
     // Extracted from https://github.com/Pixplicity/sharp/blob/master/library/src/main/java/com/pixplicity/sharp/Sharp.java
-    /*package*/ static Path parsePath(String s) {
+    /*package*/ static SvgPathData parsePath(String s) {
         int n = s.length();
         SvgParserHelper ph = new SvgParserHelper(s, 0);
         ph.skipWhitespace();
-        Path p = new Path();
+        SvgPathData p = new SvgPathData();
         float lastX = 0;
         float lastY = 0;
         float lastX1 = 0;
@@ -326,18 +509,14 @@ public class SvgSvg extends SvgGroup {
                     float x = ph.nextFloat();
                     float y = ph.nextFloat();
                     if (Character.isLowerCase(cmd)) {
-                        subPathStartX += x;
-                        subPathStartY += y;
-                        p.rMoveTo(x, y);
-                        lastX += x;
-                        lastY += y;
-                    } else {
-                        subPathStartX = x;
-                        subPathStartY = y;
-                        p.moveTo(x, y);
-                        lastX = x;
-                        lastY = y;
+                        x += lastX;
+                        y += lastY;
                     }
+                    subPathStartX = x;
+                    subPathStartY = y;
+                    p.moveTo(x, y);
+                    lastX = x;
+                    lastY = y;
                     break;
                 }
                 case 'L':
@@ -346,14 +525,12 @@ public class SvgSvg extends SvgGroup {
                     float x = ph.nextFloat();
                     float y = ph.nextFloat();
                     if (Character.isLowerCase(cmd)) {
-                        p.rLineTo(x, y);
-                        lastX += x;
-                        lastY += y;
-                    } else {
-                        p.lineTo(x, y);
-                        lastX = x;
-                        lastY = y;
+                        x += lastX;
+                        y += lastY;
                     }
+                    p.lineTo(x, y);
+                    lastX = x;
+                    lastY = y;
                     break;
                 }
                 case 'H':
@@ -361,12 +538,10 @@ public class SvgSvg extends SvgGroup {
                     // Horizontal line
                     float x = ph.nextFloat();
                     if (Character.isLowerCase(cmd)) {
-                        p.rLineTo(x, 0);
-                        lastX += x;
-                    } else {
-                        p.lineTo(x, lastY);
-                        lastX = x;
+                        x += lastX;
                     }
+                    p.lineTo(x, lastY);
+                    lastX = x;
                     break;
                 }
                 case 'V':
@@ -374,12 +549,10 @@ public class SvgSvg extends SvgGroup {
                     // Vertical line
                     float y = ph.nextFloat();
                     if (Character.isLowerCase(cmd)) {
-                        p.rLineTo(0, y);
-                        lastY += y;
-                    } else {
-                        p.lineTo(lastX, y);
-                        lastY = y;
+                        y += lastY;
                     }
+                    p.lineTo(lastX, y);
+                    lastY = y;
                     break;
                 }
                 case 'C':
@@ -500,6 +673,7 @@ public class SvgSvg extends SvgGroup {
             }
             ph.skipWhitespace();
         }
+        p.trim();
         return p;
     }
 
@@ -507,11 +681,7 @@ public class SvgSvg extends SvgGroup {
         return (float) Math.toDegrees(Math.atan2(y1, x1) - Math.atan2(y2, x2)) % 360;
     }
 
-    private static final RectF arcRectf = new RectF();
-    private static final Matrix arcMatrix = new Matrix();
-    private static final Matrix arcMatrix2 = new Matrix();
-
-    private static void drawArc(Path p, float lastX, float lastY, float x, float y,
+    private static void drawArc(SvgPathData p, float lastX, float lastY, float x, float y,
                                 float rx, float ry, float theta, int largeArc, int sweepArc) {
         //Log.d("drawArc", "from (" + lastX + "," + lastY + ") to (" + x + ","+ y + ") r=(" + rx + "," + ry + ") theta=" + theta + " flags="+ largeArc + "," + sweepArc);
 
@@ -552,7 +722,7 @@ public class SvgSvg extends SvgGroup {
             rys = ry * ry;
         }
 
-        final float R = (float) Math.sqrt((rxs * rys - rxs * y1ts - rys * x1ts) / (rxs * y1ts + rys * x1ts))
+        final float R = (float) Math.sqrt(Math.max(0, (rxs * rys - rxs * y1ts - rys * x1ts) / (rxs * y1ts + rys * x1ts)))
                 * ((largeArc == sweepArc) ? -1 : 1);
         final float cxt = R * rx * y1t / ry;
         final float cyt = -R * ry * x1t / rx;
@@ -568,206 +738,111 @@ public class SvgSvg extends SvgGroup {
             dth += 360;
         }
 
-        // draw
-        if ((theta % 360) == 0) {
-            // no rotate and translate need
-            arcRectf.set(cx - rx, cy - ry, cx + rx, cy + ry);
-            p.arcTo(arcRectf, th1, dth);
-        } else {
-            // this is the hard and slow part :-)
-            arcRectf.set(-rx, -ry, rx, ry);
-
-            arcMatrix.reset();
-            arcMatrix.postRotate(theta);
-            arcMatrix.postTranslate(cx, cy);
-            arcMatrix.invert(arcMatrix2);
+        // draw the arc as cubic Bézier curves of at most 90 degrees each, in path space
+        final int segments = Math.max(1, (int) Math.ceil(Math.abs(dth) / 90 - 0.001f));
+        final double delta = Math.toRadians(dth) / segments;
+        final double k = 4.0 / 3 * Math.tan(delta / 4);
+        double a = Math.toRadians(th1);
+        double cosA = Math.cos(a);
+        double sinA = Math.sin(a);
+        for (int i = 0; i < segments; i++) {
+            final double b = a + delta;
+            final double cosB = Math.cos(b);
+            final double sinB = Math.sin(b);
+
+            // control points on the unit circle, then scaled, rotated and translated
+            final float ux1 = (float) (cosA - k * sinA) * rx;
+            final float uy1 = (float) (sinA + k * cosA) * ry;
+            final float ux2 = (float) (cosB + k * sinB) * rx;
+            final float uy2 = (float) (sinB - k * cosB) * ry;
+            float ex, ey;
+            if (i == segments - 1) {
+                // end exactly on the requested point
+                ex = x;
+                ey = y;
+            } else {
+                final float ux = (float) cosB * rx;
+                final float uy = (float) sinB * ry;
+                ex = cx + ct * ux - st * uy;
+                ey = cy + st * ux + ct * uy;
+            }
+            p.cubicTo(cx + ct * ux1 - st * uy1, cy + st * ux1 + ct * uy1,
+                    cx + ct * ux2 - st * uy2, cy + st * ux2 + ct * uy2,
+                    ex, ey);
 
-            p.transform(arcMatrix2);
-            p.arcTo(arcRectf, th1, dth);
-            p.transform(arcMatrix);
+            a = b;
+            cosA = cosB;
+            sinA = sinB;
         }
     }
 
-    private static String composeStyle(Attributes atts) {
-        String style = atts.getValue("style");
-        if(style != null) {
-            return style;
-        }
+    /**
+     * Parse the style of the current element, from its style and presentation attributes.
+     */
+    private SvgStyle parseStyle(XmlPullParser atts) {
+        mStyleParser.begin();
+        parseStyleAttributes(atts);
+        return internStyle(mStyleParser.getStyle());
+    }
 
-        StringBuilder sb = new StringBuilder();
-        addStyleAttribute(atts, sb, "fill");
-        addStyleAttribute(atts, sb, "stroke");
-        addStyleAttribute(atts, sb, "stroke-width");
-        addStyleAttribute(atts, sb, "stroke-linecap");
-        addStyleAttribute(atts, sb, "stroke-linejoin");
-        addStyleAttribute(atts, sb, "stroke-miterlimit");
-        addStyleAttribute(atts, sb, "stroke-dasharray");
-        addStyleAttribute(atts, sb, "stroke-dashoffset");
-        addStyleAttribute(atts, sb, "stroke-opacity");
-        addStyleAttribute(atts, sb, "fill-opacity");
-        addStyleAttribute(atts, sb, "display");
-
-        return sb.toString();
-    }
-
-    private static void addStyleAttribute(Attributes atts, StringBuilder sb, String name) {
-        String value = atts.getValue(name);
-        if(value == null) {
-            return;
+    private void parseStyleAttributes(XmlPullParser atts) {
+        SvgStyleParser sp = mStyleParser;
+        String style = null;
+        // a single pass over the attributes, presentation attributes are independent of each other
+        for(int i = 0, n = atts.getAttributeCount(); i < n; i++) {
+            String name = atts.getAttributeName(i);
+            if("style".equals(name)) {
+                style = atts.getAttributeValue(i);
+            } else {
+                int property = SvgStyleParser.findAttribute(name);
+                if(property != -1) {
+                    sp.parseAttribute(property, atts.getAttributeValue(i));
+                }
+            }
         }
+        // the style attribute takes precedence over presentation attributes
+        sp.parseDeclarations(style);
+    }
 
-        if(sb.length() > 0) {
-            sb.append(';');
-        }
-        sb.append(name).append(':').append(value);
+    /*package*/ synchronized SvgStyle parseStyle(String style) {
+        mStyleParser.begin();
+        mStyleParser.parseDeclarations(style);
+        return internStyle(mStyleParser.getStyle());
     }
 
-    /*package*/ ParsedStyle parseStyle(String style) {
-        if(style==null || "".equals(style)) {
-            Paint fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-            fillPaint.setStyle(Paint.Style.FILL);
-            return new ParsedStyle(null, fillPaint, true);
+    /**
+     * Return the shared instance equal to the given scratch style, creating it if needed.
+     */
+    /*package*/ synchronized SvgStyle internStyle(SvgStyle scratch) {
+        SvgStyle style = mStyleCache.get(scratch);
+        if(style != null) {
+            return style;
         }
 
-        Paint fp = new Paint(Paint.ANTI_ALIAS_FLAG);
-        fp.setStyle(Paint.Style.FILL);
-        boolean hasFill = true;
-
-        Paint sp = new Paint(Paint.ANTI_ALIAS_FLAG);
-        sp.setStyle(Paint.Style.STROKE);
-        boolean hasStroke = false;
-
-        boolean isVisible = true;
-
-        int fcolor = fp.getColor();
-        int falpha = fp.getAlpha();
-        int scolor = sp.getColor();
-        int salpha = sp.getAlpha();
-        float stroke_width = 1;
-        float[] stroke_dash_array = null;
-        float stroke_dash_offset = 0;
-
-        if(style != null) {
-            String[] tokens = style.split(";");
-            for(String s : tokens) {
-                int n = s.indexOf(":");
-                String name = s.substring(0, n);
-                String value = s.substring(n+1);
-                if("fill".equals(name)) {
-                    if("none".equals(value)) {
-                        hasFill = false;
-                    } else if(value.startsWith("url")) {
-                        String id = value.substring(value.indexOf('#')+1, value.lastIndexOf(')'));
-                        SvgGradient g = (SvgGradient) mElementsById.get(id);
-                        // TODO make the link with element using this gradient so that updates to the gradient can be taken into account. See Gradient.addUser()
-                        fp = new Paint(g.getPaint());
-                        fp.setStyle(Paint.Style.FILL);
-                        hasFill = true;
-                        continue;
-                    } else {
-                        try {
-                            fcolor = Color.parseColor(value);
-                            hasFill = fcolor != 0;
-                        } catch (IllegalArgumentException ex) { /*pass*/ }
-                    }
-                } else if("stroke".equals(name)) {
-                    if("none".equals(value)) {
-                        hasStroke = false;
-                    } else if(value.startsWith("url")) {
-                        String id = value.substring(value.indexOf('#')+1, value.lastIndexOf(')'));
-                        SvgGradient g = (SvgGradient) mElementsById.get(id);
-                        // TODO make the link with element using this gradient so that updates to the gradient can be taken into account. See Gradient.addUser()
-                        sp = new Paint(g.getPaint());
-                        sp.setStyle(Paint.Style.STROKE);
-                        hasStroke = true;
-                        continue;
-                    } else {
-                        try {
-                            scolor = Color.parseColor(value);
-                            hasStroke = scolor != 0;
-                        } catch (IllegalArgumentException ex) { /*pass*/ }
-                    }
-                } else if("stroke-width".equals(name)) {
-                    if(sp != null) {
-                        int j;
-                        for (j = value.length() - 1; j >= 0; j--) {
-                            char c = value.charAt(j);
-                            if (Character.isDigit(c) || c == '.') break;
-                        }
-                        stroke_width = Float.parseFloat(value.substring(0, j + 1));
-                    }
-                } else if("stroke-linecap".equals(name)) {
-                    if (sp != null) {
-                        Paint.Cap cap = sp.getStrokeCap();
-                        if ("round".equals(value)) {
-                            cap = Paint.Cap.ROUND;
-                        } else if ("butt".equals(value)) {
-                            cap = Paint.Cap.BUTT;
-                        } else if ("square".equals(value)) {
-                            cap = Paint.Cap.SQUARE;
-                        }
-                        sp.setStrokeCap(cap);
-                    }
-                } else if("stroke-linejoin".equals(name)) {
-                    if(sp != null) {
-                        Paint.Join join = sp.getStrokeJoin();
-                        if ("miter".equals(value)) {
-                            join = Paint.Join.MITER;
-                        } else if ("round".equals(value)) {
-                            join = Paint.Join.ROUND;
-                        } else if ("bevel".equals(value)) {
-                            join = Paint.Join.BEVEL;
-                        }
-                        sp.setStrokeJoin(join);
-                    }
-                } else if("stroke-miterlimit".equals(name)) {
-                    if(sp != null) sp.setStrokeMiter(Float.parseFloat(value));
-                } else if("stroke-dasharray".equals(name)) {
-                    if(!"none".equals(value)) {
-                        stroke_dash_array = parseFloats(value);
+        if(!scratch.refersToGradient()) {
+            synchronized (sProcessWideStyleCache) {
+                if(sProcessWideStyleCacheEnabled) {
+                    style = sProcessWideStyleCache.get(scratch);
+                    if(style == null) {
+                        style = scratch.intern();
+                        sProcessWideStyleCache.put(style, style);
                     }
-                } else if("stroke-dashoffset".equals(name)) {
-                    stroke_dash_offset = Float.parseFloat(value);
-                } else if("stroke-opacity".equals(name)) {
-                    salpha = (int)(255* Float.parseFloat(value));
-                } else if("fill-opacity".equals(name)) {
-                    falpha = (int)(255* Float.parseFloat(value));
-                } else if("display".equals(name)) {
-                    isVisible = !"none".equals(value);
                 }
             }
         }
 
-        if(!hasFill) {
-            fp = null;
+        if(style == null) {
+            style = scratch.intern();
         }
-
-        if(fp != null) {
-            fp.setColor(fcolor);
-            fp.setAlpha(falpha);
-        }
-
-        if(!hasStroke) {
-            sp = null;
-        }
-
-        if(sp != null) {
-            sp.setColor(scolor);
-            sp.setAlpha(salpha);
-            sp.setStrokeWidth(stroke_width);
-            if(stroke_dash_array != null) {
-                sp.setPathEffect(new DashPathEffect(stroke_dash_array, stroke_dash_offset));
-            }
-        }
-
-        return new ParsedStyle(sp, fp, isVisible);
+        mStyleCache.put(style, style);
+        return style;
     }
 
-    private static void parseGradient(SvgGradient g, Attributes atts) {
-        g.setTransform(parseTransform(atts.getValue("gradientTransform")));
-        g.setHref(atts.getValue("xlink:href"));
+    private void parseGradient(SvgGradient g, XmlPullParser atts) {
+        g.setSharedTransform(parseTransform(getValue(atts, "gradientTransform")));
+        g.setHref(getValue(atts, "xlink:href"));
         g.setTileMode(Shader.TileMode.CLAMP);
-        String spreadMethod = atts.getValue("spreadMethod");
+        String spreadMethod = getValue(atts, "spreadMethod");
         if(spreadMethod != null) {
             if("repeat".equals(spreadMethod)) {
                 g.setTileMode(Shader.TileMode.REPEAT);
@@ -777,101 +852,16 @@ public class SvgSvg extends SvgGroup {
         }
     }
 
-    /*package*/ static Matrix parseTransform(String s) {
-        if(s == null) {
-            return null;
-        }
-
-        if (s.startsWith("matrix(")) {
-            float[] floats = parseFloats(s, "matrix(");
-            if (floats.length == 6) {
-                Matrix matrix = new Matrix();
-                matrix.setValues(new float[]{
-                        // Row 1
-                        floats[0],
-                        floats[2],
-                        floats[4],
-                        // Row 2
-                        floats[1],
-                        floats[3],
-                        floats[5],
-                        // Row 3
-                        0,
-                        0,
-                        1,
-                });
-                return matrix;
-            }
-        } else if (s.startsWith("translate(")) {
-            float[] floats = parseFloats(s, "translate(");
-            if (floats.length > 0) {
-                float tx = floats[0];
-                float ty = floats.length == 1 ? 0 : floats[1];
-                Matrix matrix = new Matrix();
-                matrix.postTranslate(tx, ty);
-                return matrix;
-            }
-        } else if (s.startsWith("scale(")) {
-            float[] floats = parseFloats(s, "scale(");
-            if (floats.length > 0) {
-                float sx = floats[0];
-                float sy = floats.length == 1 ? 0 : floats[1];
-                Matrix matrix = new Matrix();
-                matrix.postScale(sx, sy);
-                return matrix;
-            }
-        } else if (s.startsWith("skewX(")) {
-            float[] floats = parseFloats(s, "skewX(");
-            if (floats.length > 0) {
-                float angle = floats[0];
-                Matrix matrix = new Matrix();
-                matrix.postSkew((float) Math.tan(angle), 0);
-                return matrix;
-            }
-        } else if (s.startsWith("skewY(")) {
-            float[] floats = parseFloats(s, "skewY(");
-            if (floats.length > 0) {
-                float angle = floats[0];
-                Matrix matrix = new Matrix();
-                matrix.postSkew(0, (float) Math.tan(angle));
-                return matrix;
-            }
-        } else if (s.startsWith("rotate(")) {
-            float[] floats = parseFloats(s, "rotate(");
-            if (floats.length > 0) {
-                float angle = floats[0];
-                float cx = 0;
-                float cy = 0;
-                if (floats.length > 2) {
-                    cx = floats[1];
-                    cy = floats[2];
-                }
-                Matrix matrix = new Matrix();
-                matrix.postTranslate(cx, cy);
-                matrix.postRotate(angle);
-                matrix.postTranslate(-cx, -cy);
-                return matrix;
-            }
-        }
-        return null;
+    /*package*/ synchronized Matrix parseTransform(String s) {
+        return mTransformParser.parse(s);
     }
 
-    private static Float parseFloat(Attributes atts, String name, float defaultValue) {
-        String v = atts.getValue(name);
-        return v == null ? defaultValue : Float.parseFloat(v);
+    private static String getValue(XmlPullParser atts, String name) {
+        return atts.getAttributeValue(null, name);
     }
 
-    private static float[] parseFloats(String list, String prefix) {
-        return parseFloats(list.substring(prefix.length(), list.lastIndexOf(')')));
-    }
-
-    private static float[] parseFloats(String list) {
-        String[] tokens = list.split(list.indexOf(',')==-1?" ":",");
-        int l = tokens.length;
-        float[] floats = new float[l];
-        for(int i=0; i<l; i++) {
-            floats[i] = Float.parseFloat(tokens[i]);
-        }
-        return floats;
+    private static Float parseFloat(XmlPullParser atts, String name, float defaultValue) {
+        String v = getValue(atts, name);
+        return v == null ? defaultValue : Float.parseFloat(v);
     }
 }
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.SystemClock;
+import android.util.LruCache;
+
+/**
+ * Render a drawing as square tiles of a fixed size in pixels, cached per zoom level. Zoom level
+ * n renders the document at scale 2^n, and a drawing displayed at scale s uses the level just
+ * above s, so that tiles are never magnified. Tiles are rendered on demand, within a time budget
+ * per frame: missing tiles are replaced by the matching area of a coarser tile until they are
+ * rendered in the following frames. The levels of detail of the drawable apply to the scale of
+ * each zoom level.
+ * This is bound to a drawable and must be used from its drawing thread.
+ */
+final class SvgTileRenderer {
+    private static final double LOG_2 = Math.log(2);
+    private static final int MIN_LEVEL = -16;
+    private static final int MAX_LEVEL = 16;
+    // coarser levels searched for a placeholder
+    private static final int MAX_PLACEHOLDER_DEPTH = 4;
+    // time spent rendering tiles per frame, at least one tile is rendered
+    private static final long RENDER_BUDGET_MS = 8;
+
+    private final SvgDrawable mDrawable;
+    private final int mTileSize;
+    private final LruCache<TileKey,Bitmap> mTiles;
+    // last evicted tile, reused from the next frame on since it may be drawn in the current one
+    private Bitmap mEvictedTile;
+    private Bitmap mSpareTile;
+    private int mModificationCount;
+
+    private final TileKey mKey = new TileKey();
+    private final Canvas mTileCanvas = new Canvas();
+    private final Matrix mTileMatrix = new Matrix();
+    private final Matrix mMatrix = new Matrix();
+    private final Matrix mInverse = new Matrix();
+    private final Rect mClip = new Rect();
+    private final RectF mVisible = new RectF();
+    private final RectF mTileRect = new RectF();
+    private final RectF mDst = new RectF();
+    private final Rect mSrc = new Rect();
+
+    SvgTileRenderer(SvgDrawable drawable, int tileSize, int maxBytes) {
+        mDrawable = drawable;
+        mTileSize = tileSize;
+        mTiles = new LruCache<TileKey,Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(TileKey key, Bitmap bitmap) {
+                return bitmap.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, TileKey key, Bitmap oldValue, Bitmap newValue) {
+                if(evicted) {
+                    mEvictedTile = oldValue;
+                }
+            }
+        };
+    }
+
+    void clear() {
+        mTiles.evictAll();
+        mEvictedTile = null;
+        mSpareTile = null;
+    }
+
+    /**
+     * Draw the tiles covering the clip of the canvas.
+     * @param base matrix from the document coordinates to the device coordinates
+     * @param paint used to draw the tile bitmaps
+     * @return false if the matrix rotates or skews the drawing, which tiles cannot render
+     */
+    boolean draw(Canvas canvas, SvgSvg root, Matrix base, Paint paint) {
+        if(!base.rectStaysRect() || !base.invert(mInverse)) {
+            return false;
+        }
+
+        int modificationCount = root.getModificationCount();
+        if(modificationCount != mModificationCount) {
+            mTiles.evictAll();
+            mModificationCount = modificationCount;
+        }
+        if(mSpareTile == null) {
+            mSpareTile = mEvictedTile;
+        }
+        mEvictedTile = null;
+
+        float scale = base.mapRadius(1);
+        int level = (int) Math.ceil(Math.log(scale) / LOG_2);
+        level = Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level));
+        float tileDocSize = mTileSize / Math.scalb(1f, level);
+
+        int saveCount = canvas.save();
+        canvas.setMatrix(null);
+
+        // visible area of the document
+        if(!canvas.getClipBounds(mClip)) {
+            canvas.restoreToCount(saveCount);
+            return true;
+        }
+        RectF visible = mVisible;
+        visible.set(mClip);
+        mInverse.mapRect(visible);
+        if(!visible.intersect(0, 0, root.width, root.height)) {
+            canvas.restoreToCount(saveCount);
+            return true;
+        }
+        int left = (int) (visible.left / tileDocSize);
+        int top = (int) (visible.top / tileDocSize);
+        int right = (int) Math.ceil(visible.right / tileDocSize);
+        int bottom = (int) Math.ceil(visible.bottom / tileDocSize);
+
+        long deadline = SystemClock.uptimeMillis() + RENDER_BUDGET_MS;
+        boolean rendered = false;
+        boolean pending = false;
+        for(int ty = top; ty < bottom; ty++) {
+            for(int tx = left; tx < right; tx++) {
+                mTileRect.set(tx * tileDocSize, ty * tileDocSize, (tx + 1) * tileDocSize, (ty + 1) * tileDocSize);
+                base.mapRect(mDst, mTileRect);
+
+                Bitmap tile = get(level, tx, ty);
+                if(tile == null && (!rendered || SystemClock.uptimeMillis() < deadline)) {
+                    tile = render(root, level, tx, ty);
+                    rendered = true;
+                }
+                if(tile != null) {
+                    canvas.drawBitmap(tile, null, mDst, paint);
+                } else {
+                    drawPlaceholder(canvas, level, tx, ty, paint);
+                    pending = true;
+                }
+            }
+        }
+
+        canvas.restoreToCount(saveCount);
+
+        if(pending) {
+            // render the remaining tiles in the next frame
+            mDrawable.invalidateSelf();
+        }
+        return true;
+    }
+
+    private Bitmap get(int level, int x, int y) {
+        mKey.level = level;
+        mKey.x = x;
+        mKey.y = y;
+        return mTiles.get(mKey);
+    }
+
+    /**
+     * Draw the area of the tile from the closest coarser level available.
+     */
+    private void drawPlaceholder(Canvas canvas, int level, int tx, int ty, Paint paint) {
+        for(int depth = 1; depth <= MAX_PLACEHOLDER_DEPTH && level - depth >= MIN_LEVEL; depth++) {
+            int size = mTileSize >> depth;
+            if(size == 0) {
+                return;
+            }
+            Bitmap tile = get(level - depth, tx >> depth, ty >> depth);
+            if(tile != null) {
+                int mask = (1 << depth) - 1;
+                int x = (tx & mask) * size;
+                int y = (ty & mask) * size;
+                mSrc.set(x, y, x + size, y + size);
+                canvas.drawBitmap(tile, mSrc, mDst, paint);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Render a tile, whose document area is in mTileRect.
+     */
+    private Bitmap render(SvgSvg root, int level, int tx, int ty) {
+        Bitmap tile = mSpareTile;
+        mSpareTile = null;
+        if(tile == null) {
+            tile = Bitmap.createBitmap(mTileSize, mTileSize, Bitmap.Config.ARGB_8888);
+        } else {
+            tile.eraseColor(0);
+        }
+
+        Canvas canvas = mTileCanvas;
+        canvas.setBitmap(tile);
+        float scale = Math.scalb(1f, level);
+        mTileMatrix.setScale(scale, scale);
+        mTileMatrix.postTranslate(-tx * mTileSize, -ty * mTileSize);
+
+        if(!root.mBoundsValid) {
+            root.updateBounds();
+        }
+
+        // the level of detail of the drawing at the scale of the tile
+        SvgDrawable.DetailLevel detailLevel = mDrawable.selectDetailLevel(scale);
+        float minElementSize = 0;
+        float tolerance = 0;
+        if(detailLevel != null) {
+            minElementSize = detailLevel.getMinElementSize(scale);
+            tolerance = detailLevel.getCurveTolerance(scale);
+        }
+
+        // only the elements whose bounds intersect the tile are drawn
+        SvgDisplayList list = mDrawable.getDisplayList();
+        SvgElement[] elements = list.elements;
+        SvgPath[] paths = list.paths;
+        Matrix[] matrices = list.matrices;
+        int[] next = list.next;
+        for(int i = 0, n = list.count; i < n; ) {
+            RectF bounds = elements[i].mBounds;
+            if(!RectF.intersects(bounds, mTileRect)
+                    || (bounds.width() < minElementSize && bounds.height() < minElementSize)) {
+                i = next[i];
+                continue;
+            }
+            SvgPath path = paths[i];
+            if(path != null) {
+                mMatrix.set(mTileMatrix);
+                if(matrices[i] != null) {
+                    mMatrix.preConcat(matrices[i]);
+                }
+                canvas.setMatrix(mMatrix);
+                mDrawable.drawSvgPath(canvas, path, tolerance > 0 ? path.getFlattenedPath(tolerance) : path.getPath());
+            }
+            i++;
+        }
+        canvas.setBitmap(null);
+
+        TileKey key = new TileKey();
+        key.level = level;
+        key.x = tx;
+        key.y = ty;
+        mTiles.put(key, tile);
+        return tile;
+    }
+
+    private static final class TileKey {
+        int level;
+        int x;
+        int y;
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(!(o instanceof TileKey)) return false;
+            TileKey k = (TileKey) o;
+            return level == k.level && x == k.x && y == k.y;
+        }
+
+        @Override
+        public int hashCode() {
+            return (level * 31 + x) * 31 + y;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2017 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package net.pierrox.android.lsvg;
+
+import android.graphics.Matrix;
+
+import java.util.HashMap;
+
+/**
+ * Streaming parser for transform lists such as "translate(10,20) rotate(30) scale(2)".
+ * All functions are composed into a single matrix. Results are cached: identical transform
+ * strings within a document share the same Matrix, see SvgElement for copy on write.
+ * An instance is bound to a document and is not thread safe.
+ */
+final class SvgTransformParser {
+    private final HashMap<String,Matrix> mCache = new HashMap<>();
+    private final SvgParserHelper mNumberParser = new SvgParserHelper();
+    private final float[] mArgs = new float[6];
+    private final float[] mValues = new float[9];
+    private final Matrix mTmpMatrix = new Matrix();
+
+    SvgTransformParser() {
+        mValues[Matrix.MPERSP_2] = 1;
+    }
+
+    /**
+     * Return the matrix for this transform list, or null for an identity or invalid transform.
+     * The returned matrix must not be modified.
+     */
+    Matrix parse(String s) {
+        if(s == null) {
+            return null;
+        }
+
+        Matrix m = mCache.get(s);
+        if(m == null && !mCache.containsKey(s)) {
+            m = parseUncached(s);
+            mCache.put(s, m);
+        }
+        return m;
+    }
+
+    private Matrix parseUncached(String s) {
+        Matrix m = new Matrix();
+        float[] a = mArgs;
+        int n = s.length();
+        int pos = 0;
+        for(;;) {
+            pos = skipSeparators(s, pos, n);
+            if(pos == n) {
+                break;
+            }
+
+            int open = s.indexOf('(', pos);
+            int close = open == -1 ? -1 : s.indexOf(')', open);
+            if(close == -1) {
+                return null;
+            }
+            int nameEnd = open;
+            while(nameEnd > pos && Character.isWhitespace(s.charAt(nameEnd - 1))) {
+                nameEnd--;
+            }
+            int count = parseArguments(s, open + 1, close);
+
+            if(matches(s, pos, nameEnd, "matrix") && count == 6) {
+                float[] v = mValues;
+                v[Matrix.MSCALE_X] = a[0];
+                v[Matrix.MSKEW_Y] = a[1];
+                v[Matrix.MSKEW_X] = a[2];
+                v[Matrix.MSCALE_Y] = a[3];
+                v[Matrix.MTRANS_X] = a[4];
+                v[Matrix.MTRANS_Y] = a[5];
+                mTmpMatrix.setValues(v);
+                m.preConcat(mTmpMatrix);
+            } else if(matches(s, pos, nameEnd, "translate") && (count == 1 || count == 2)) {
+                m.preTranslate(a[0], count == 2 ? a[1] : 0);
+            } else if(matches(s, pos, nameEnd, "scale") && (count == 1 || count == 2)) {
+                m.preScale(a[0], count == 2 ? a[1] : a[0]);
+            } else if(matches(s, pos, nameEnd, "rotate") && count == 1) {
+                m.preRotate(a[0]);
+            } else if(matches(s, pos, nameEnd, "rotate") && count == 3) {
+                m.preRotate(a[0], a[1], a[2]);
+            } else if(matches(s, pos, nameEnd, "skewX") && count == 1) {
+                m.preSkew((float) Math.tan(Math.toRadians(a[0])), 0);
+            } else if(matches(s, pos, nameEnd, "skewY") && count == 1) {
+                m.preSkew(0, (float) Math.tan(Math.toRadians(a[0])));
+            } else {
+                // per the spec, an invalid transform list is ignored as a whole
+                return null;
+            }
+
+            pos = close + 1;
+        }
+
+        return m.isIdentity() ? null : m;
+    }
+
+    /**
+     * Parse at most 6 numbers into mArgs, return their count or -1 if invalid.
+     */
+    private int parseArguments(String s, int start, int end) {
+        SvgParserHelper ph = mNumberParser;
+        ph.reset(s, start, end);
+        ph.skipWhitespace();
+        int count = 0;
+        while(ph.pos < end) {
+            if(count == mArgs.length) {
+                return -1;
+            }
+            float f;
+            try {
+                f = ph.parseFloat();
+            } catch (RuntimeException e) {
+                return -1;
+            }
+            if(Float.isNaN(f)) {
+                return -1;
+            }
+            mArgs[count++] = f;
+            ph.skipNumberSeparator();
+            ph.skipWhitespace();
+        }
+        return count;
+    }
+
+    private static int skipSeparators(String s, int pos, int n) {
+        while(pos < n) {
+            char c = s.charAt(pos);
+            if(c != ',' && !Character.isWhitespace(c)) {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    private static boolean matches(String s, int start, int end, String name) {
+        int length = name.length();
+        return end - start == length && s.regionMatches(start, name, 0, length);
+    }
+}